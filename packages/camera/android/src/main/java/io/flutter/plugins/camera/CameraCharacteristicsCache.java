@@ -0,0 +1,88 @@
+// Copyright 2018 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.camera;
+
+import android.graphics.ImageFormat;
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.MediaRecorder;
+import android.util.Size;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process-wide cache of the characteristics and output sizes of each camera.
+ *
+ * <p>Querying {@link CameraCharacteristics} goes through the camera HAL and is slow on some
+ * devices, so it is done once per camera id; switching cameras afterwards only reads this cache.
+ * Characteristics are static for the lifetime of the process.
+ */
+final class CameraCharacteristicsCache {
+  /** The cached properties of a single camera. Size lists are sorted by ascending area. */
+  static final class Entry {
+    final CameraCharacteristics characteristics;
+    final List<Size> jpegSizes;
+    final List<Size> previewSizes;
+    final List<Size> recorderSizes;
+
+    private Entry(CameraCharacteristics characteristics) {
+      this.characteristics = characteristics;
+      StreamConfigurationMap streamConfigurationMap =
+          characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+      //noinspection ConstantConditions
+      jpegSizes = sortedByArea(streamConfigurationMap.getOutputSizes(ImageFormat.JPEG));
+      previewSizes = sortedByArea(streamConfigurationMap.getOutputSizes(SurfaceTexture.class));
+      recorderSizes = sortedByArea(streamConfigurationMap.getOutputSizes(MediaRecorder.class));
+    }
+
+    int getSensorOrientation() {
+      //noinspection ConstantConditions
+      return characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+    }
+
+    int getLensFacing() {
+      //noinspection ConstantConditions
+      return characteristics.get(CameraCharacteristics.LENS_FACING);
+    }
+
+    private static List<Size> sortedByArea(Size[] sizes) {
+      List<Size> sorted = new ArrayList<>(Arrays.asList(sizes));
+      Collections.sort(sorted, new CompareSizesByArea());
+      return Collections.unmodifiableList(sorted);
+    }
+  }
+
+  static class CompareSizesByArea implements Comparator<Size> {
+    @Override
+    public int compare(Size lhs, Size rhs) {
+      // We cast here to ensure the multiplications won't overflow.
+      return Long.signum(
+          (long) lhs.getWidth() * lhs.getHeight() - (long) rhs.getWidth() * rhs.getHeight());
+    }
+  }
+
+  private static final Map<String, Entry> entries = new HashMap<>();
+
+  static synchronized Entry get(CameraManager cameraManager, String cameraName)
+      throws CameraAccessException {
+    Entry entry = entries.get(cameraName);
+    if (entry == null) {
+      entry = new Entry(cameraManager.getCameraCharacteristics(cameraName));
+      entries.put(cameraName, entry);
+    }
+    return entry;
+  }
+
+  // Should never be instantiated.
+  private CameraCharacteristicsCache() {}
+}
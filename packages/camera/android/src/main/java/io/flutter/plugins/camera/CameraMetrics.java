@@ -0,0 +1,121 @@
+// Copyright 2018 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.camera;
+
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CaptureFailure;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+/**
+ * Collects timing metrics of a camera from the results of its repeating request.
+ *
+ * <p>The time from opening the camera to the first completed preview frame is reported once per
+ * open. Frames that fail with {@link CaptureFailure#REASON_ERROR} are counted as failed, and
+ * frames missing between the sensor timestamps of consecutive results are counted as skipped;
+ * both counters are reported at most once per second when they change.
+ *
+ * <p>Must only be used on the camera thread.
+ */
+class CameraMetrics extends CameraCaptureSession.CaptureCallback {
+  /** Receives the metrics of a camera. */
+  interface Listener {
+    void onLatency(String metric, long durationMs);
+
+    void onDroppedFrames(long failedFrames, long skippedFrames);
+  }
+
+  static final String FIRST_PREVIEW_FRAME = "firstPreviewFrame";
+  static final String STILL_CAPTURE = "stillCapture";
+  static final String RECORDING_START = "recordingStart";
+  static final String RECORDING_STOP = "recordingStop";
+
+  private static final long REPORT_INTERVAL_MS = 1000;
+
+  private final Listener listener;
+  private long openStartTimeMs;
+  private boolean awaitingFirstFrame;
+  private long lastTimestampNs;
+  private long failedFrames;
+  private long skippedFrames;
+  private long reportedFailedFrames;
+  private long reportedSkippedFrames;
+  private long lastReportTimeMs;
+
+  CameraMetrics(Listener listener) {
+    this.listener = listener;
+  }
+
+  /** Called when the camera starts opening; the next completed frame ends the measurement. */
+  void onOpening() {
+    openStartTimeMs = SystemClock.elapsedRealtime();
+    awaitingFirstFrame = true;
+    lastTimestampNs = 0;
+  }
+
+  /**
+   * Called when the repeating request is replaced. The gap between the last frame of the old
+   * request and the first frame of the new one is not counted as skipped frames.
+   */
+  void onRepeatingRequestChanged() {
+    lastTimestampNs = 0;
+  }
+
+  void reportLatency(String metric, long startTimeMs) {
+    listener.onLatency(metric, SystemClock.elapsedRealtime() - startTimeMs);
+  }
+
+  @Override
+  public void onCaptureCompleted(
+      @NonNull CameraCaptureSession session,
+      @NonNull CaptureRequest request,
+      @NonNull TotalCaptureResult result) {
+    if (awaitingFirstFrame) {
+      awaitingFirstFrame = false;
+      reportLatency(FIRST_PREVIEW_FRAME, openStartTimeMs);
+    }
+
+    Long timestampNs = result.get(CaptureResult.SENSOR_TIMESTAMP);
+    Long frameDurationNs = result.get(CaptureResult.SENSOR_FRAME_DURATION);
+    if (timestampNs != null) {
+      if (lastTimestampNs != 0 && frameDurationNs != null && frameDurationNs > 0) {
+        long missed = Math.round((double) (timestampNs - lastTimestampNs) / frameDurationNs) - 1;
+        if (missed > 0) {
+          skippedFrames += missed;
+        }
+      }
+      lastTimestampNs = timestampNs;
+    }
+    reportDroppedFrames();
+  }
+
+  @Override
+  public void onCaptureFailed(
+      @NonNull CameraCaptureSession session,
+      @NonNull CaptureRequest request,
+      @NonNull CaptureFailure failure) {
+    // Flushed frames are the result of reconfiguring the session, not of the camera dropping them.
+    if (failure.getReason() == CaptureFailure.REASON_ERROR) {
+      failedFrames++;
+      reportDroppedFrames();
+    }
+  }
+
+  private void reportDroppedFrames() {
+    if (failedFrames == reportedFailedFrames && skippedFrames == reportedSkippedFrames) {
+      return;
+    }
+    long now = SystemClock.elapsedRealtime();
+    if (now - lastReportTimeMs >= REPORT_INTERVAL_MS) {
+      lastReportTimeMs = now;
+      reportedFailedFrames = failedFrames;
+      reportedSkippedFrames = skippedFrames;
+      listener.onDroppedFrames(failedFrames, skippedFrames);
+    }
+  }
+}
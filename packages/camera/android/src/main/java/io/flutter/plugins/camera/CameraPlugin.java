@@ -6,21 +6,25 @@ import android.app.Application;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.graphics.ImageFormat;
+import android.graphics.Rect;
 import android.graphics.SurfaceTexture;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
-import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraManager;
 import android.hardware.camera2.CameraMetadata;
 import android.hardware.camera2.CaptureFailure;
 import android.hardware.camera2.CaptureRequest;
-import android.hardware.camera2.params.StreamConfigurationMap;
 import android.media.Image;
 import android.media.ImageReader;
+import android.media.MediaCodec;
 import android.media.MediaRecorder;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Size;
@@ -41,15 +45,28 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class CameraPlugin implements MethodCallHandler {
 
   private static final int CAMERA_REQUEST_ID = 513469796;
   private static final String TAG = "CameraPlugin";
+  // Captured JPEGs are copied out of the reader right away, so a few images are enough to keep
+  // the camera busy during a burst.
+  private static final int MAX_JPEG_IMAGES = 4;
+  private static final int IO_THREADS = 2;
+  // Bounds the number of captured JPEGs waiting to be written. When the queue is full, the camera
+  // thread writes the next file itself, which throttles a burst to the speed of the disk.
+  private static final int IO_QUEUE_CAPACITY = 4;
+  private static final int DEFAULT_THUMBNAIL_SIZE = 200;
   private static final SparseIntArray ORIENTATIONS =
       new SparseIntArray() {
         {
@@ -62,7 +79,9 @@ public class CameraPlugin implements MethodCallHandler {
 
   private static CameraManager cameraManager;
   private final FlutterView view;
-  private Camera camera;
+  // The open cameras keyed by texture id, from the least to the most recently used. Only accessed
+  // on the platform thread.
+  private final LinkedHashMap<Long, Camera> cameras = new LinkedHashMap<>(4, 0.75f, true);
   private Activity activity;
   private Registrar registrar;
   // The code to run after requesting camera permissions.
@@ -93,8 +112,10 @@ public class CameraPlugin implements MethodCallHandler {
                   return;
                 }
                 if (activity == CameraPlugin.this.activity) {
-                  if (camera != null) {
-                    camera.open(null);
+                  for (Camera camera : cameras.values()) {
+                    if (!camera.suspended) {
+                      camera.openAsync(null);
+                    }
                   }
                 }
               }
@@ -102,8 +123,8 @@ public class CameraPlugin implements MethodCallHandler {
               @Override
               public void onActivityPaused(Activity activity) {
                 if (activity == CameraPlugin.this.activity) {
-                  if (camera != null) {
-                    camera.close();
+                  for (Camera camera : cameras.values()) {
+                    camera.closeAsync(null);
                   }
                 }
               }
@@ -111,8 +132,8 @@ public class CameraPlugin implements MethodCallHandler {
               @Override
               public void onActivityStopped(Activity activity) {
                 if (activity == CameraPlugin.this.activity) {
-                  if (camera != null) {
-                    camera.close();
+                  for (Camera camera : cameras.values()) {
+                    camera.closeAsync(null);
                   }
                 }
               }
@@ -139,9 +160,11 @@ public class CameraPlugin implements MethodCallHandler {
   public void onMethodCall(MethodCall call, final Result result) {
     switch (call.method) {
       case "init":
-        if (camera != null) {
-          camera.close();
+        // Cameras of a previous Dart isolate can no longer be used.
+        for (Camera camera : cameras.values()) {
+          camera.dispose();
         }
+        cameras.clear();
         result.success(null);
         break;
       case "availableCameras":
@@ -150,12 +173,8 @@ public class CameraPlugin implements MethodCallHandler {
           List<Map<String, Object>> cameras = new ArrayList<>();
           for (String cameraName : cameraNames) {
             HashMap<String, Object> details = new HashMap<>();
-            CameraCharacteristics characteristics =
-                cameraManager.getCameraCharacteristics(cameraName);
             details.put("name", cameraName);
-            @SuppressWarnings("ConstantConditions")
-            int lensFacing = characteristics.get(CameraCharacteristics.LENS_FACING);
-            switch (lensFacing) {
+            switch (CameraCharacteristicsCache.get(cameraManager, cameraName).getLensFacing()) {
               case CameraMetadata.LENS_FACING_FRONT:
                 details.put("lensFacing", "front");
                 break;
@@ -177,32 +196,73 @@ public class CameraPlugin implements MethodCallHandler {
         {
           String cameraName = call.argument("cameraName");
           String resolutionPreset = call.argument("resolutionPreset");
-          if (camera != null) {
-            camera.close();
+          Integer requestedWidth = call.argument("requestedWidth");
+          Integer requestedHeight = call.argument("requestedHeight");
+          Size requestedPreviewSize =
+              requestedWidth == null || requestedHeight == null
+                  ? null
+                  : new Size(requestedWidth, requestedHeight);
+          Boolean persistentSession = call.argument("persistentSession");
+          Boolean persistentImageStream = call.argument("persistentImageStream");
+          Boolean keepOtherCamerasOpen = call.argument("keepOtherCamerasOpen");
+          Iterator<Camera> iterator = cameras.values().iterator();
+          while (iterator.hasNext()) {
+            Camera other = iterator.next();
+            // A camera device can only be opened once.
+            if (keepOtherCamerasOpen == null
+                || !keepOtherCamerasOpen
+                || other.cameraName.equals(cameraName)) {
+              other.dispose();
+              iterator.remove();
+            }
           }
-          camera = new Camera(cameraName, resolutionPreset, result);
+          Camera camera =
+              new Camera(
+                  cameraName,
+                  resolutionPreset,
+                  requestedPreviewSize,
+                  persistentSession != null && persistentSession,
+                  persistentImageStream != null && persistentImageStream,
+                  new MainThreadResult(result));
+          cameras.put(camera.textureEntry.id(), camera);
           break;
         }
       case "takePicture":
-        {
-          camera.takePicture((String) call.argument("path"), result);
-          break;
-        }
+      case "takePictureBurst":
+      case "setRecordingProfile":
       case "startVideoRecording":
+      case "startSegmentedVideoRecording":
+      case "stopVideoRecording":
+      case "pauseVideoRecording":
+      case "resumeVideoRecording":
+      case "startImageStream":
+      case "stopImageStream":
         {
-          final String filePath = call.argument("filePath");
-          camera.startVideoRecording(filePath, result);
+          Camera camera = getCamera(call);
+          if (camera == null) {
+            result.error("cameraNotFound", "No camera with texture id " + getTextureId(call), null);
+            break;
+          }
+          camera.onMethodCall(call, new MainThreadResult(result));
           break;
         }
-      case "stopVideoRecording":
+      case "imageStreamFrameProcessed":
         {
-          camera.stopVideoRecording(result);
+          Camera camera = getCamera(call);
+          if (camera != null) {
+            camera.imageStream.onFrameProcessed();
+          }
+          result.success(null);
           break;
         }
       case "dispose":
         {
+          Camera camera = cameras.remove(getTextureId(call));
           if (camera != null) {
             camera.dispose();
+            if (!camera.suspended) {
+              resumeSuspendedCamera();
+            }
           }
           result.success(null);
           break;
@@ -213,13 +273,74 @@ public class CameraPlugin implements MethodCallHandler {
     }
   }
 
-  private static class CompareSizesByArea implements Comparator<Size> {
-    @Override
-    public int compare(Size lhs, Size rhs) {
-      // We cast here to ensure the multiplications won't overflow.
-      return Long.signum(
-          (long) lhs.getWidth() * lhs.getHeight() - (long) rhs.getWidth() * rhs.getHeight());
+  private static long getTextureId(MethodCall call) {
+    Number textureId = call.argument("textureId");
+    return textureId == null ? -1 : textureId.longValue();
+  }
+
+  /** Returns the camera a method call is addressed to and marks it as the most recently used. */
+  @Nullable
+  private Camera getCamera(MethodCall call) {
+    return cameras.get(getTextureId(call));
+  }
+
+  /**
+   * Called on the platform thread when {@code camera} could not be opened because the camera
+   * service is out of resources, as happens on devices that cannot run several cameras at once.
+   *
+   * <p>The least recently used other open camera is suspended, that is closed until another camera
+   * is disposed, and opening is retried. Each retry suspends one more camera, so this ends once
+   * every other camera is suspended.
+   */
+  private void onCameraInUse(
+      final Camera camera, @Nullable final Result result, String errorDescription) {
+    if (camera.disposed) {
+      return;
+    }
+    Camera victim = null;
+    for (Camera other : cameras.values()) {
+      if (other != camera && !other.suspended) {
+        victim = other;
+        break;
+      }
+    }
+    if (victim == null) {
+      camera.sendErrorEvent(errorDescription);
+      if (result != null) result.error("cameraAccess", errorDescription, null);
+      return;
     }
+    victim.suspended = true;
+    Map<String, Object> event = new HashMap<>();
+    event.put("eventType", "cameraSuspended");
+    victim.sendEvent(event);
+    // The camera is only reopened once the other one is fully closed.
+    victim.closeAsync(
+        new Runnable() {
+          @Override
+          public void run() {
+            if (!camera.disposed) {
+              camera.openAsync(result);
+            }
+          }
+        });
+  }
+
+  /** Reopens the most recently used suspended camera, if any, after a camera was disposed. */
+  private void resumeSuspendedCamera() {
+    Camera resumed = null;
+    for (Camera camera : cameras.values()) {
+      if (camera.suspended) {
+        resumed = camera;
+      }
+    }
+    if (resumed == null) {
+      return;
+    }
+    resumed.suspended = false;
+    Map<String, Object> event = new HashMap<>();
+    event.put("eventType", "cameraResumed");
+    resumed.sendEvent(event);
+    resumed.openAsync(null);
   }
 
   private class CameraRequestPermissionsListener
@@ -234,8 +355,144 @@ public class CameraPlugin implements MethodCallHandler {
     }
   }
 
+  /**
+   * Forwards replies to the platform thread, so that results can be produced by camera callbacks
+   * running on the background camera thread.
+   */
+  private static class MainThreadResult implements Result {
+    private final Result result;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    MainThreadResult(Result result) {
+      this.result = result;
+    }
+
+    @Override
+    public void success(final Object o) {
+      handler.post(
+          new Runnable() {
+            @Override
+            public void run() {
+              result.success(o);
+            }
+          });
+    }
+
+    @Override
+    public void error(
+        final String errorCode, final String errorMessage, final Object errorDetails) {
+      handler.post(
+          new Runnable() {
+            @Override
+            public void run() {
+              result.error(errorCode, errorMessage, errorDetails);
+            }
+          });
+    }
+
+    @Override
+    public void notImplemented() {
+      handler.post(
+          new Runnable() {
+            @Override
+            public void run() {
+              result.notImplemented();
+            }
+          });
+    }
+  }
+
+  /**
+   * Copies the bytes of a JPEG image so that the image can be returned to its reader right away;
+   * the reader may be closed before the file has been written.
+   */
+  private static byte[] readJpeg(Image image) {
+    ByteBuffer buffer = image.getPlanes()[0].getBuffer();
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  private static String describeCaptureFailure(CaptureFailure failure) {
+    switch (failure.getReason()) {
+      case CaptureFailure.REASON_ERROR:
+        return "An error happened in the framework";
+      case CaptureFailure.REASON_FLUSHED:
+        return "The capture has failed due to an abortCaptures() call";
+      default:
+        return "Unknown reason";
+    }
+  }
+
+  /** Completes the result of a burst capture exactly once, from any thread. */
+  private static class BurstResult {
+    private final AtomicInteger remainingFiles;
+    private final Result result;
+    private boolean done;
+
+    BurstResult(int count, Result result) {
+      this.remainingFiles = new AtomicInteger(count);
+      this.result = result;
+    }
+
+    synchronized boolean isDone() {
+      return done;
+    }
+
+    void onFileWritten(String[] paths) {
+      if (remainingFiles.decrementAndGet() == 0) {
+        synchronized (this) {
+          if (done) {
+            return;
+          }
+          done = true;
+        }
+        result.success(Arrays.asList(paths));
+      }
+    }
+
+    void error(String errorCode, String errorMessage) {
+      synchronized (this) {
+        if (done) {
+          return;
+        }
+        done = true;
+      }
+      result.error(errorCode, errorMessage, null);
+    }
+  }
+
+  private interface ErrorCallback {
+    void onError(String errorCode, String errorMessage);
+  }
+
+  /**
+   * A single opened camera device.
+   *
+   * <p>All Camera2 callbacks and every operation on the device run on a dedicated background
+   * thread, and JPEG files are written on a separate I/O thread, so neither capturing nor disk
+   * writes block the platform thread that dispatches channel messages. Events are posted back to
+   * the platform thread before they are sent to Dart.
+   */
   private class Camera {
     private final FlutterView.SurfaceTextureEntry textureEntry;
+    private final ImageStream imageStream;
+    private final CameraMetrics metrics;
+    private final HandlerThread backgroundThread;
+    private final Handler backgroundHandler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ThreadPoolExecutor ioExecutor =
+        new ThreadPoolExecutor(
+            IO_THREADS,
+            IO_THREADS,
+            1,
+            TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(IO_QUEUE_CAPACITY),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    private boolean disposed;
+    // Whether the camera was closed to let another camera open. Only accessed on the platform
+    // thread.
+    private boolean suspended;
     private CameraDevice cameraDevice;
     private CameraCaptureSession cameraCaptureSession;
     private EventChannel.EventSink eventSink;
@@ -247,43 +504,114 @@ public class CameraPlugin implements MethodCallHandler {
     private Size previewSize;
     private CaptureRequest.Builder captureRequestBuilder;
     private Size videoSize;
+    private Size presetVideoSize;
+    private CameraCharacteristicsCache.Entry cameraProperties;
+    private RecordingProfile recordingProfile = RecordingProfile.DEFAULT;
+    private final boolean persistentSession;
+    private final boolean persistentImageStream;
+    private Surface previewSurface;
+    private Surface persistentRecorderSurface;
+    // The outputs the current capture session was configured with.
+    private List<Surface> sessionOutputs = Collections.emptyList();
     private MediaRecorder mediaRecorder;
     private boolean recordingVideo;
-
-    Camera(final String cameraName, final String resolutionPreset, @NonNull final Result result) {
+    private boolean recordingPaused;
+    // Segmented recordings roll over to a new file in segmentDirectory every segmentDurationMs.
+    private File segmentDirectory;
+    private long segmentDurationMs;
+    private String segmentPrefix;
+    private int segmentIndex;
+    private String currentSegmentPath;
+    private String nextSegmentPath;
+
+    Camera(
+        final String cameraName,
+        final String resolutionPreset,
+        @Nullable final Size requestedPreviewSize,
+        boolean persistentSession,
+        boolean persistentImageStream,
+        @NonNull final Result result) {
 
       this.cameraName = cameraName;
+      // Persistent recorder surfaces are only available on Android M and later.
+      this.persistentSession =
+          persistentSession && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
+      this.persistentImageStream = persistentImageStream;
       textureEntry = view.createSurfaceTexture();
+      backgroundThread = new HandlerThread("CameraBackground" + textureEntry.id());
+      backgroundThread.start();
+      backgroundHandler = new Handler(backgroundThread.getLooper());
+      imageStream =
+          new ImageStream(
+              registrar.messenger(),
+              textureEntry.id(),
+              backgroundHandler,
+              new ImageStream.StatisticsListener() {
+                @Override
+                public void onStatistics(long deliveredFrames, long droppedFrames) {
+                  Map<String, Object> event = new HashMap<>();
+                  event.put("eventType", "imageStreamStatistics");
+                  event.put("deliveredFrames", deliveredFrames);
+                  event.put("droppedFrames", droppedFrames);
+                  sendEvent(event);
+                }
+              });
+      metrics =
+          new CameraMetrics(
+              new CameraMetrics.Listener() {
+                @Override
+                public void onLatency(String metric, long durationMs) {
+                  Map<String, Object> event = new HashMap<>();
+                  event.put("eventType", "cameraMetric");
+                  event.put("metric", metric);
+                  event.put("durationMs", durationMs);
+                  sendEvent(event);
+                }
+
+                @Override
+                public void onDroppedFrames(long failedFrames, long skippedFrames) {
+                  Map<String, Object> event = new HashMap<>();
+                  event.put("eventType", "droppedFrames");
+                  event.put("failedFrames", failedFrames);
+                  event.put("skippedFrames", skippedFrames);
+                  sendEvent(event);
+                }
+              });
 
       registerEventChannel();
 
       try {
-        Size minPreviewSize;
-        switch (resolutionPreset) {
-          case "high":
-            minPreviewSize = new Size(1024, 768);
-            break;
-          case "medium":
-            minPreviewSize = new Size(640, 480);
-            break;
-          case "low":
-            minPreviewSize = new Size(320, 240);
-            break;
-          default:
-            throw new IllegalArgumentException("Unknown preset: " + resolutionPreset);
+        cameraProperties = CameraCharacteristicsCache.get(cameraManager, cameraName);
+        sensorOrientation = cameraProperties.getSensorOrientation();
+        isFrontFacing = cameraProperties.getLensFacing() == CameraMetadata.LENS_FACING_FRONT;
+        computeBestCaptureSize(cameraProperties);
+        if (requestedPreviewSize != null) {
+          computeBestPreviewAndRecordingSize(cameraProperties, requestedPreviewSize, true);
+        } else {
+          switch (resolutionPreset) {
+            case "max":
+              computeBestPreviewAndRecordingSize(cameraProperties, null, true);
+              break;
+            case "ultraHigh":
+              computeBestPreviewAndRecordingSize(cameraProperties, new Size(1920, 1080), true);
+              break;
+            case "veryHigh":
+              computeBestPreviewAndRecordingSize(cameraProperties, new Size(1280, 720), true);
+              break;
+            case "high":
+              computeBestPreviewAndRecordingSize(cameraProperties, new Size(1024, 768), false);
+              break;
+            case "medium":
+              computeBestPreviewAndRecordingSize(cameraProperties, new Size(640, 480), false);
+              break;
+            case "low":
+              computeBestPreviewAndRecordingSize(cameraProperties, new Size(320, 240), false);
+              break;
+            default:
+              throw new IllegalArgumentException("Unknown preset: " + resolutionPreset);
+          }
         }
-
-        CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(cameraName);
-        StreamConfigurationMap streamConfigurationMap =
-            characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-        //noinspection ConstantConditions
-        sensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
-        //noinspection ConstantConditions
-        isFrontFacing =
-            characteristics.get(CameraCharacteristics.LENS_FACING)
-                == CameraMetadata.LENS_FACING_FRONT;
-        computeBestCaptureSize(streamConfigurationMap);
-        computeBestPreviewAndRecordingSize(streamConfigurationMap, minPreviewSize, captureSize);
+        presetVideoSize = videoSize;
 
         if (cameraPermissionContinuation != null) {
           result.error("cameraPermission", "Camera permission request ongoing", null);
@@ -303,7 +631,7 @@ public class CameraPlugin implements MethodCallHandler {
                       "cameraPermission", "MediaRecorderAudio permission not granted", null);
                   return;
                 }
-                open(result);
+                openAsync(result);
               }
             };
         requestingPermission = false;
@@ -326,6 +654,97 @@ public class CameraPlugin implements MethodCallHandler {
       }
     }
 
+    /**
+     * Handles a method call addressed to this camera on the camera thread. Runtime exceptions, such
+     * as those of missing arguments, are replied as errors.
+     */
+    private void onMethodCall(final MethodCall call, final Result result) {
+      backgroundHandler.post(
+          new Runnable() {
+            @Override
+            public void run() {
+              try {
+                switch (call.method) {
+                  case "takePicture":
+                    {
+                      Integer thumbnailSize = call.argument("thumbnailSize");
+                      takePicture(
+                          (String) call.argument("path"),
+                          (String) call.argument("thumbnailPath"),
+                          thumbnailSize == null ? DEFAULT_THUMBNAIL_SIZE : thumbnailSize,
+                          result);
+                      break;
+                    }
+                  case "takePictureBurst":
+                    takePictureBurst(
+                        (int) call.argument("count"), (String) call.argument("directory"), result);
+                    break;
+                  case "setRecordingProfile":
+                    setRecordingProfile(call, result);
+                    break;
+                  case "startVideoRecording":
+                    startVideoRecording((String) call.argument("filePath"), result);
+                    break;
+                  case "startSegmentedVideoRecording":
+                    startSegmentedVideoRecording(
+                        (String) call.argument("directory"),
+                        ((Number) call.argument("segmentDurationMs")).longValue(),
+                        result);
+                    break;
+                  case "stopVideoRecording":
+                    stopVideoRecording(result);
+                    break;
+                  case "pauseVideoRecording":
+                    pauseVideoRecording(result);
+                    break;
+                  case "resumeVideoRecording":
+                    resumeVideoRecording(result);
+                    break;
+                  case "startImageStream":
+                    {
+                      Integer maxFramesInFlight = call.argument("maxFramesInFlight");
+                      Integer targetFps = call.argument("targetFps");
+                      Integer cropLeft = call.argument("cropLeft");
+                      Integer cropTop = call.argument("cropTop");
+                      Integer cropWidth = call.argument("cropWidth");
+                      Integer cropHeight = call.argument("cropHeight");
+                      Integer targetWidth = call.argument("targetWidth");
+                      Integer targetHeight = call.argument("targetHeight");
+                      Rect cropRect = null;
+                      if (cropLeft != null
+                          && cropTop != null
+                          && cropWidth != null
+                          && cropHeight != null) {
+                        cropRect =
+                            new Rect(cropLeft, cropTop, cropLeft + cropWidth, cropTop + cropHeight);
+                      }
+                      startImageStream(
+                          maxFramesInFlight == null
+                              ? ImageStream.DEFAULT_MAX_FRAMES_IN_FLIGHT
+                              : maxFramesInFlight,
+                          targetFps == null ? 0 : targetFps,
+                          cropRect,
+                          targetWidth == null || targetHeight == null
+                              ? null
+                              : new Size(targetWidth, targetHeight),
+                          result);
+                      break;
+                    }
+                  case "stopImageStream":
+                    stopImageStream(result);
+                    break;
+                  default:
+                    result.notImplemented();
+                    break;
+                }
+              } catch (RuntimeException e) {
+                // Unlike on the platform thread, an uncaught exception here would crash the app.
+                result.error(e.getClass().getSimpleName(), e.getMessage(), null);
+              }
+            }
+          });
+    }
+
     private void registerEventChannel() {
       new EventChannel(
               registrar.messenger(), "flutter.io/cameraPlugin/cameraEvents" + textureEntry.id())
@@ -355,26 +774,47 @@ public class CameraPlugin implements MethodCallHandler {
               == PackageManager.PERMISSION_GRANTED;
     }
 
+    /**
+     * Chooses the preview and video sizes, preferring sizes with the aspect ratio of the captured
+     * pictures.
+     *
+     * <p>The preview is the smallest size that is larger than {@code minPreviewSize}, or at least
+     * as large when {@code inclusive} is true. A null {@code minPreviewSize} selects the largest
+     * size.
+     */
     private void computeBestPreviewAndRecordingSize(
-        StreamConfigurationMap streamConfigurationMap, Size minPreviewSize, Size captureSize) {
-      Size[] sizes = streamConfigurationMap.getOutputSizes(SurfaceTexture.class);
+        CameraCharacteristicsCache.Entry cameraProperties,
+        @Nullable Size minPreviewSize,
+        boolean inclusive) {
+      List<Size> sizes = cameraProperties.previewSizes;
       float captureSizeRatio = (float) captureSize.getWidth() / captureSize.getHeight();
-      List<Size> goodEnough = new ArrayList<>();
+      List<Size> sameRatio = new ArrayList<>();
       for (Size s : sizes) {
-        if ((float) s.getWidth() / s.getHeight() == captureSizeRatio
-            && minPreviewSize.getWidth() < s.getWidth()
-            && minPreviewSize.getHeight() < s.getHeight()) {
-          goodEnough.add(s);
+        if ((float) s.getWidth() / s.getHeight() == captureSizeRatio) {
+          sameRatio.add(s);
         }
       }
 
-      Collections.sort(goodEnough, new CompareSizesByArea());
+      List<Size> goodEnough = new ArrayList<>();
+      for (Size s : sameRatio.isEmpty() ? sizes : sameRatio) {
+        if (minPreviewSize == null || isLargeEnough(s, minPreviewSize, inclusive)) {
+          goodEnough.add(s);
+        }
+      }
 
       if (goodEnough.isEmpty()) {
-        previewSize = sizes[0];
-        videoSize = sizes[0];
+        // Nothing with the right aspect ratio is large enough; fall back to any size that is.
+        previewSize = sizes.get(sizes.size() - 1);
+        for (Size s : sizes) {
+          if (isLargeEnough(s, minPreviewSize, inclusive)) {
+            previewSize = s;
+            break;
+          }
+        }
+        videoSize = previewSize;
       } else {
-        previewSize = goodEnough.get(0);
+        previewSize =
+            minPreviewSize == null ? goodEnough.get(goodEnough.size() - 1) : goodEnough.get(0);
 
         // Video capture size should not be greater than 1080 because MediaRecorder cannot handle higher resolutions.
         videoSize = goodEnough.get(0);
@@ -387,12 +827,15 @@ public class CameraPlugin implements MethodCallHandler {
       }
     }
 
-    private void computeBestCaptureSize(StreamConfigurationMap streamConfigurationMap) {
+    private boolean isLargeEnough(Size size, Size minSize, boolean inclusive) {
+      return inclusive
+          ? size.getWidth() >= minSize.getWidth() && size.getHeight() >= minSize.getHeight()
+          : size.getWidth() > minSize.getWidth() && size.getHeight() > minSize.getHeight();
+    }
+
+    private void computeBestCaptureSize(CameraCharacteristicsCache.Entry cameraProperties) {
       // For still image captures, we use the largest available size.
-      captureSize =
-          Collections.max(
-              Arrays.asList(streamConfigurationMap.getOutputSizes(ImageFormat.JPEG)),
-              new CompareSizesByArea());
+      captureSize = cameraProperties.jpegSizes.get(cameraProperties.jpegSizes.size() - 1);
     }
 
     private void prepareMediaRecorder(String outputFilePath) throws IOException {
@@ -402,14 +845,25 @@ public class CameraPlugin implements MethodCallHandler {
       mediaRecorder = new MediaRecorder();
       mediaRecorder.setAudioSource(MediaRecorder.AudioSource.MIC);
       mediaRecorder.setVideoSource(MediaRecorder.VideoSource.SURFACE);
+      if (persistentRecorderSurface != null) {
+        mediaRecorder.setInputSurface(persistentRecorderSurface);
+      }
       mediaRecorder.setOutputFormat(MediaRecorder.OutputFormat.MPEG_4);
-      mediaRecorder.setAudioEncoder(MediaRecorder.AudioEncoder.AAC);
-      mediaRecorder.setVideoEncoder(MediaRecorder.VideoEncoder.H264);
-      mediaRecorder.setVideoEncodingBitRate(1024 * 1000);
-      mediaRecorder.setAudioSamplingRate(16000);
-      mediaRecorder.setVideoFrameRate(27);
+      recordingProfile.applyTo(mediaRecorder);
       mediaRecorder.setVideoSize(videoSize.getWidth(), videoSize.getHeight());
       mediaRecorder.setOutputFile(outputFilePath);
+      if (segmentDurationMs > 0) {
+        mediaRecorder.setMaxDuration((int) segmentDurationMs);
+        mediaRecorder.setOnInfoListener(
+            new MediaRecorder.OnInfoListener() {
+              @Override
+              public void onInfo(MediaRecorder recorder, int what, int extra) {
+                if (recorder == mediaRecorder) {
+                  onSegmentInfo(what);
+                }
+              }
+            });
+      }
 
       int displayRotation = activity.getWindowManager().getDefaultDisplay().getRotation();
       int displayOrientation = ORIENTATIONS.get(displayRotation);
@@ -419,6 +873,108 @@ public class CameraPlugin implements MethodCallHandler {
       mediaRecorder.prepare();
     }
 
+    /**
+     * Sets the encoder settings of the following recordings.
+     *
+     * <p>Settings start from the {@link android.media.CamcorderProfile} named by the {@code preset}
+     * argument, or from the default settings when there is none, and are overridden by the other
+     * arguments. Replies with the effective settings.
+     */
+    private void setRecordingProfile(MethodCall call, @NonNull Result result) {
+      if (recordingVideo) {
+        result.error(
+            "videoRecordingFailed", "The recording profile cannot change while recording.", null);
+        return;
+      }
+      try {
+        String preset = call.argument("preset");
+        RecordingProfile profile =
+            preset == null
+                ? RecordingProfile.DEFAULT
+                : RecordingProfile.fromPreset(cameraName, preset);
+        recordingProfile =
+            profile.withOverrides(
+                (Integer) call.argument("videoBitRate"),
+                (Integer) call.argument("videoFrameRate"),
+                (Integer) call.argument("audioSamplingRate"),
+                (Integer) call.argument("audioBitRate"),
+                (String) call.argument("videoEncoder"));
+      } catch (IllegalArgumentException e) {
+        result.error("IllegalArgumentException", e.getMessage(), null);
+        return;
+      }
+      Size previousVideoSize = videoSize;
+      videoSize = computeRecordingSize(recordingProfile.videoSize);
+      if (persistentRecorderSurface != null
+          && cameraDevice != null
+          && !videoSize.equals(previousVideoSize)) {
+        // The session's recorder stream has the old video size and must be reconfigured.
+        try {
+          closeCaptureSession();
+          preparePersistentRecorderSurface();
+          startPreview();
+        } catch (CameraAccessException | IOException e) {
+          result.error("videoRecordingFailed", e.getMessage(), null);
+          return;
+        }
+      }
+      result.success(recordingProfile.toMap(videoSize));
+    }
+
+    /**
+     * Connects the persistent recorder surface to a prepared, never started recorder. This gives
+     * the surface the size of recorded videos before it is added to a capture session.
+     */
+    private void preparePersistentRecorderSurface() throws IOException {
+      File placeholder =
+          new File(activity.getCacheDir(), "camera_session" + textureEntry.id() + ".mp4");
+      prepareMediaRecorder(placeholder.getPath());
+      //noinspection ResultOfMethodCallIgnored
+      placeholder.delete();
+    }
+
+    /**
+     * Returns the largest size the recorder supports within {@code requestedSize}, or the size
+     * chosen from the resolution preset when no size is requested.
+     */
+    private Size computeRecordingSize(@Nullable Size requestedSize) {
+      if (requestedSize == null) {
+        return presetVideoSize;
+      }
+      Size best = null;
+      for (Size size : cameraProperties.recorderSizes) {
+        if (size.getWidth() <= requestedSize.getWidth()
+            && size.getHeight() <= requestedSize.getHeight()) {
+          best = size;
+        }
+      }
+      return best != null ? best : presetVideoSize;
+    }
+
+    private void openAsync(@Nullable final Result result) {
+      backgroundHandler.post(
+          new Runnable() {
+            @Override
+            public void run() {
+              open(result);
+            }
+          });
+    }
+
+    /** Closes the camera, then runs {@code onClosed} on the platform thread if it is given. */
+    private void closeAsync(@Nullable final Runnable onClosed) {
+      backgroundHandler.post(
+          new Runnable() {
+            @Override
+            public void run() {
+              close();
+              if (onClosed != null) {
+                mainHandler.post(onClosed);
+              }
+            }
+          });
+    }
+
     private void open(@Nullable final Result result) {
       if (!hasCameraPermission()) {
         if (result != null) result.error("cameraPermission", "Camera permission not granted", null);
@@ -426,12 +982,32 @@ public class CameraPlugin implements MethodCallHandler {
         try {
           imageReader =
               ImageReader.newInstance(
-                  captureSize.getWidth(), captureSize.getHeight(), ImageFormat.JPEG, 2);
+                  captureSize.getWidth(),
+                  captureSize.getHeight(),
+                  ImageFormat.JPEG,
+                  MAX_JPEG_IMAGES);
+          SurfaceTexture surfaceTexture = textureEntry.surfaceTexture();
+          surfaceTexture.setDefaultBufferSize(previewSize.getWidth(), previewSize.getHeight());
+          previewSurface = new Surface(surfaceTexture);
+          if (persistentSession) {
+            persistentRecorderSurface = MediaCodec.createPersistentInputSurface();
+            try {
+              preparePersistentRecorderSurface();
+            } catch (IOException e) {
+              // Fall back to a new session for every recording.
+              persistentRecorderSurface.release();
+              persistentRecorderSurface = null;
+            }
+          }
+          metrics.onOpening();
           cameraManager.openCamera(
               cameraName,
               new CameraDevice.StateCallback() {
+                private boolean opened;
+
                 @Override
                 public void onOpened(@NonNull CameraDevice cameraDevice) {
+                  opened = true;
                   Camera.this.cameraDevice = cameraDevice;
                   try {
                     startPreview();
@@ -450,11 +1026,9 @@ public class CameraPlugin implements MethodCallHandler {
 
                 @Override
                 public void onClosed(@NonNull CameraDevice camera) {
-                  if (eventSink != null) {
-                    Map<String, String> event = new HashMap<>();
-                    event.put("eventType", "cameraClosing");
-                    eventSink.success(event);
-                  }
+                  Map<String, Object> event = new HashMap<>();
+                  event.put("eventType", "cameraClosing");
+                  sendEvent(event);
                   super.onClosed(camera);
                 }
 
@@ -469,7 +1043,7 @@ public class CameraPlugin implements MethodCallHandler {
                 public void onError(@NonNull CameraDevice cameraDevice, int errorCode) {
                   cameraDevice.close();
                   Camera.this.cameraDevice = null;
-                  String errorDescription;
+                  final String errorDescription;
                   switch (errorCode) {
                     case ERROR_CAMERA_IN_USE:
                       errorDescription = "The camera device is in use already.";
@@ -490,10 +1064,25 @@ public class CameraPlugin implements MethodCallHandler {
                     default:
                       errorDescription = "Unknown camera error";
                   }
+                  if (!opened
+                      && (errorCode == ERROR_MAX_CAMERAS_IN_USE
+                          || errorCode == ERROR_CAMERA_IN_USE)) {
+                    mainHandler.post(
+                        new Runnable() {
+                          @Override
+                          public void run() {
+                            onCameraInUse(Camera.this, result, errorDescription);
+                          }
+                        });
+                    return;
+                  }
                   sendErrorEvent(errorDescription);
+                  if (!opened && result != null) {
+                    result.error("cameraAccess", errorDescription, null);
+                  }
                 }
               },
-              null);
+              backgroundHandler);
         } catch (CameraAccessException e) {
           if (result != null) result.error("cameraAccess", e.getMessage(), null);
         }
@@ -508,8 +1097,23 @@ public class CameraPlugin implements MethodCallHandler {
       }
     }
 
-    private void takePicture(String filePath, @NonNull final Result result) {
+    /**
+     * Captures a picture and saves it to {@code filePath}.
+     *
+     * <p>When {@code thumbnailPath} is given, a thumbnail whose longest side is at most {@code
+     * thumbnailSize} pixels is also written there on the I/O thread, and the reply contains its
+     * path.
+     */
+    private void takePicture(
+        String filePath,
+        @Nullable String thumbnailPath,
+        final int thumbnailSize,
+        @NonNull final Result result) {
+      if (!checkOpen(result)) {
+        return;
+      }
       final File file = new File(filePath);
+      final File thumbnailFile = thumbnailPath == null ? null : new File(thumbnailPath);
 
       if (file.exists()) {
         result.error(
@@ -518,63 +1122,205 @@ public class CameraPlugin implements MethodCallHandler {
             null);
         return;
       }
+      if (thumbnailFile != null && thumbnailFile.exists()) {
+        result.error(
+            "fileExists",
+            "File at path '" + thumbnailPath + "' already exists. Cannot overwrite.",
+            null);
+        return;
+      }
+      if (thumbnailSize < 1) {
+        result.error("IllegalArgumentException", "thumbnailSize must be positive.", null);
+        return;
+      }
 
+      final long captureStartTimeMs = SystemClock.elapsedRealtime();
       imageReader.setOnImageAvailableListener(
           new ImageReader.OnImageAvailableListener() {
             @Override
             public void onImageAvailable(ImageReader reader) {
+              final byte[] bytes;
               try (Image image = reader.acquireLatestImage()) {
-                ByteBuffer buffer = image.getPlanes()[0].getBuffer();
-                writeToFile(buffer, file);
-                result.success(null);
-              } catch (IOException e) {
-                result.error("IOError", "Failed saving image", null);
+                // The listener is called again once the image is available.
+                if (image == null) {
+                  return;
+                }
+                bytes = readJpeg(image);
               }
+              ioExecutor.execute(
+                  new Runnable() {
+                    @Override
+                    public void run() {
+                      try {
+                        writeToFile(ByteBuffer.wrap(bytes), file);
+                      } catch (IOException e) {
+                        result.error("IOError", "Failed saving image", null);
+                        return;
+                      }
+                      // The listener only posts the event, so it is safe to call from here.
+                      metrics.reportLatency(CameraMetrics.STILL_CAPTURE, captureStartTimeMs);
+                      if (thumbnailFile == null) {
+                        result.success(null);
+                        return;
+                      }
+                      try {
+                        JpegThumbnail.write(bytes, file, thumbnailFile, thumbnailSize);
+                        Map<String, Object> reply = new HashMap<>();
+                        reply.put("thumbnailPath", thumbnailFile.getPath());
+                        result.success(reply);
+                      } catch (IOException e) {
+                        result.error("IOError", "Failed saving thumbnail", null);
+                      }
+                    }
+                  });
             }
           },
-          null);
+          backgroundHandler);
 
       try {
-        final CaptureRequest.Builder captureBuilder =
-            cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
-        captureBuilder.addTarget(imageReader.getSurface());
-        int displayRotation = activity.getWindowManager().getDefaultDisplay().getRotation();
-        int displayOrientation = ORIENTATIONS.get(displayRotation);
-        if (isFrontFacing) displayOrientation = -displayOrientation;
-        captureBuilder.set(
-            CaptureRequest.JPEG_ORIENTATION, (-displayOrientation + sensorOrientation) % 360);
-
         cameraCaptureSession.capture(
-            captureBuilder.build(),
+            createStillCaptureRequest(),
             new CameraCaptureSession.CaptureCallback() {
               @Override
               public void onCaptureFailed(
                   @NonNull CameraCaptureSession session,
                   @NonNull CaptureRequest request,
                   @NonNull CaptureFailure failure) {
-                String reason;
-                switch (failure.getReason()) {
-                  case CaptureFailure.REASON_ERROR:
-                    reason = "An error happened in the framework";
-                    break;
-                  case CaptureFailure.REASON_FLUSHED:
-                    reason = "The capture has failed due to an abortCaptures() call";
-                    break;
-                  default:
-                    reason = "Unknown reason";
-                }
-                result.error("captureFailure", reason, null);
+                result.error("captureFailure", describeCaptureFailure(failure), null);
               }
             },
-            null);
+            backgroundHandler);
       } catch (CameraAccessException e) {
         result.error("cameraAccess", e.getMessage(), null);
       }
     }
 
+    /**
+     * Captures {@code count} pictures in a single burst and saves them as JPEG files in {@code
+     * directory}.
+     *
+     * <p>Each image is copied out of the reader as soon as it arrives and handed to the I/O pool,
+     * so files are written while the remaining frames of the burst are still being captured. The
+     * result is the list of file paths in capture order, sent once every file has been written.
+     */
+    private void takePictureBurst(
+        final int count, String directoryPath, @NonNull final Result result) {
+      if (!checkOpen(result)) {
+        return;
+      }
+      if (count < 1) {
+        result.error("IllegalArgumentException", "count must be at least 1.", null);
+        return;
+      }
+      File directory = new File(directoryPath);
+      if (!directory.isDirectory()) {
+        result.error(
+            "directoryNotFound", "Directory at path '" + directoryPath + "' does not exist.", null);
+        return;
+      }
+
+      final String[] paths = new String[count];
+      String prefix = "burst_" + System.currentTimeMillis() + "_";
+      for (int i = 0; i < count; i++) {
+        File file = new File(directory, prefix + i + ".jpg");
+        if (file.exists()) {
+          result.error(
+              "fileExists",
+              "File at path '" + file.getPath() + "' already exists. Cannot overwrite.",
+              null);
+          return;
+        }
+        paths[i] = file.getPath();
+      }
+
+      final BurstResult burstResult = new BurstResult(count, result);
+      imageReader.setOnImageAvailableListener(
+          new ImageReader.OnImageAvailableListener() {
+            private int nextIndex;
+
+            @Override
+            public void onImageAvailable(ImageReader reader) {
+              final byte[] bytes;
+              try (Image image = reader.acquireNextImage()) {
+                if (image == null) {
+                  return;
+                }
+                bytes = readJpeg(image);
+              }
+              if (nextIndex >= count || burstResult.isDone()) {
+                return;
+              }
+              final File file = new File(paths[nextIndex++]);
+              ioExecutor.execute(
+                  new Runnable() {
+                    @Override
+                    public void run() {
+                      try {
+                        writeToFile(ByteBuffer.wrap(bytes), file);
+                        burstResult.onFileWritten(paths);
+                      } catch (IOException e) {
+                        burstResult.error("IOError", "Failed saving image " + file.getPath());
+                      }
+                    }
+                  });
+            }
+          },
+          backgroundHandler);
+
+      try {
+        List<CaptureRequest> requests = new ArrayList<>(count);
+        CaptureRequest request = createStillCaptureRequest();
+        for (int i = 0; i < count; i++) {
+          requests.add(request);
+        }
+        cameraCaptureSession.captureBurst(
+            requests,
+            new CameraCaptureSession.CaptureCallback() {
+              @Override
+              public void onCaptureFailed(
+                  @NonNull CameraCaptureSession session,
+                  @NonNull CaptureRequest request,
+                  @NonNull CaptureFailure failure) {
+                // A failed frame produces no image, so the remaining images could no longer be
+                // matched to their files.
+                burstResult.error("captureFailure", describeCaptureFailure(failure));
+              }
+
+              @Override
+              public void onCaptureSequenceAborted(
+                  @NonNull CameraCaptureSession session, int sequenceId) {
+                burstResult.error("captureFailure", "The burst capture was aborted");
+              }
+            },
+            backgroundHandler);
+      } catch (CameraAccessException e) {
+        burstResult.error("cameraAccess", e.getMessage());
+      }
+    }
+
+    /** Replies with a {@code cameraClosed} error and returns false if the camera is not open. */
+    private boolean checkOpen(@NonNull Result result) {
+      if (cameraDevice == null || cameraCaptureSession == null) {
+        result.error("cameraClosed", "The camera is closed.", null);
+        return false;
+      }
+      return true;
+    }
+
+    private CaptureRequest createStillCaptureRequest() throws CameraAccessException {
+      final CaptureRequest.Builder captureBuilder =
+          cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
+      captureBuilder.addTarget(imageReader.getSurface());
+      int displayRotation = activity.getWindowManager().getDefaultDisplay().getRotation();
+      int displayOrientation = ORIENTATIONS.get(displayRotation);
+      if (isFrontFacing) displayOrientation = -displayOrientation;
+      captureBuilder.set(
+          CaptureRequest.JPEG_ORIENTATION, (-displayOrientation + sensorOrientation) % 360);
+      return captureBuilder.build();
+    }
+
     private void startVideoRecording(String filePath, @NonNull final Result result) {
-      if (cameraDevice == null) {
-        result.error("configureFailed", "Camera was closed during configuration.", null);
+      if (!checkOpen(result)) {
         return;
       }
       if (new File(filePath).exists()) {
@@ -584,126 +1330,433 @@ public class CameraPlugin implements MethodCallHandler {
             null);
         return;
       }
-      try {
-        closeCaptureSession();
-        prepareMediaRecorder(filePath);
-
-        recordingVideo = true;
+      segmentDurationMs = 0;
+      startRecorder(filePath, result);
+    }
 
-        SurfaceTexture surfaceTexture = textureEntry.surfaceTexture();
-        surfaceTexture.setDefaultBufferSize(previewSize.getWidth(), previewSize.getHeight());
-        captureRequestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_RECORD);
+    /**
+     * Starts a recording that is split into files of {@code durationMs} milliseconds in {@code
+     * directoryPath}.
+     *
+     * <p>On Android O and later the recorder switches to the next file seamlessly with {@link
+     * MediaRecorder#setNextOutputFile}; on older versions a new recorder is started for every
+     * segment, leaving a short gap between them. A {@code videoSegmentCompleted} event is sent
+     * with the path of each file once it is complete.
+     */
+    private void startSegmentedVideoRecording(
+        String directoryPath, long durationMs, @NonNull final Result result) {
+      if (!checkOpen(result)) {
+        return;
+      }
+      if (durationMs <= 0) {
+        result.error("IllegalArgumentException", "segmentDurationMs must be positive.", null);
+        return;
+      }
+      File directory = new File(directoryPath);
+      if (!directory.isDirectory()) {
+        result.error(
+            "directoryNotFound", "Directory at path '" + directoryPath + "' does not exist.", null);
+        return;
+      }
+      segmentDirectory = directory;
+      segmentDurationMs = durationMs;
+      segmentPrefix = "segment_" + System.currentTimeMillis() + "_";
+      segmentIndex = 0;
+      currentSegmentPath = nextSegmentFile().getPath();
+      segmentIndex++;
+      startRecorder(currentSegmentPath, result);
+    }
 
-        List<Surface> surfaces = new ArrayList<>();
+    /**
+     * Returns the file of the next segment. {@link #segmentIndex} is only advanced once the file is
+     * used, so that segments are numbered without gaps.
+     */
+    private File nextSegmentFile() {
+      return new File(segmentDirectory, segmentPrefix + segmentIndex + ".mp4");
+    }
 
-        Surface previewSurface = new Surface(surfaceTexture);
-        surfaces.add(previewSurface);
-        captureRequestBuilder.addTarget(previewSurface);
+    private void startRecorder(String filePath, @NonNull final Result result) {
+      final long startTimeMs = SystemClock.elapsedRealtime();
+      try {
+        if (persistentRecorderSurface == null) {
+          closeCaptureSession();
+        }
+        prepareMediaRecorder(filePath);
 
-        Surface recorderSurface = mediaRecorder.getSurface();
-        surfaces.add(recorderSurface);
-        captureRequestBuilder.addTarget(recorderSurface);
+        recordingVideo = true;
+        recordingPaused = false;
 
-        cameraDevice.createCaptureSession(
-            surfaces,
-            new CameraCaptureSession.StateCallback() {
+        startPreview(
+            new Runnable() {
               @Override
-              public void onConfigured(@NonNull CameraCaptureSession cameraCaptureSession) {
-                try {
-                  if (cameraDevice == null) {
-                    result.error("configureFailed", "Camera was closed during configuration", null);
-                    return;
-                  }
-                  Camera.this.cameraCaptureSession = cameraCaptureSession;
-                  captureRequestBuilder.set(
-                      CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
-                  cameraCaptureSession.setRepeatingRequest(
-                      captureRequestBuilder.build(), null, null);
-                  mediaRecorder.start();
-                  result.success(null);
-                } catch (CameraAccessException e) {
-                  result.error("cameraAccess", e.getMessage(), null);
-                }
+              public void run() {
+                mediaRecorder.start();
+                metrics.reportLatency(CameraMetrics.RECORDING_START, startTimeMs);
+                result.success(null);
               }
-
+            },
+            new ErrorCallback() {
               @Override
-              public void onConfigureFailed(@NonNull CameraCaptureSession cameraCaptureSession) {
-                result.error("configureFailed", "Failed to configure camera session", null);
+              public void onError(String errorCode, String errorMessage) {
+                result.error(errorCode, errorMessage, null);
               }
-            },
-            null);
+            });
       } catch (CameraAccessException | IOException e) {
         result.error("videoRecordingFailed", e.getMessage(), null);
       }
     }
 
+    private void onSegmentInfo(int what) {
+      switch (what) {
+        case MediaRecorder.MEDIA_RECORDER_INFO_MAX_DURATION_APPROACHING:
+          if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            File nextFile = nextSegmentFile();
+            try {
+              mediaRecorder.setNextOutputFile(nextFile);
+              segmentIndex++;
+              nextSegmentPath = nextFile.getPath();
+            } catch (IOException e) {
+              // The recorder stops at the end of the segment and is restarted below.
+              sendErrorEvent(e.getMessage());
+            }
+          }
+          break;
+        case MediaRecorder.MEDIA_RECORDER_INFO_NEXT_OUTPUT_FILE_STARTED:
+          sendSegmentCompletedEvent(currentSegmentPath);
+          currentSegmentPath = nextSegmentPath;
+          nextSegmentPath = null;
+          break;
+        case MediaRecorder.MEDIA_RECORDER_INFO_MAX_DURATION_REACHED:
+          // The recorder has stopped on its own because no next file could be set.
+          mediaRecorder.reset();
+          sendSegmentCompletedEvent(currentSegmentPath);
+          currentSegmentPath = nextSegmentFile().getPath();
+          segmentIndex++;
+          startRecorder(
+              currentSegmentPath,
+              new Result() {
+                @Override
+                public void success(Object o) {}
+
+                @Override
+                public void error(String errorCode, String errorMessage, Object errorDetails) {
+                  recordingVideo = false;
+                  sendErrorEvent(errorMessage);
+                }
+
+                @Override
+                public void notImplemented() {}
+              });
+          break;
+      }
+    }
+
+    /**
+     * Stops the recording in progress, if any, because the camera is closing. What was recorded so
+     * far is kept, and a {@code videoRecordingStopped} event tells Dart that the recording ended.
+     */
+    private void endRecording() {
+      if (!recordingVideo) {
+        return;
+      }
+      recordingVideo = false;
+      recordingPaused = false;
+      boolean saved = true;
+      try {
+        mediaRecorder.stop();
+      } catch (RuntimeException e) {
+        // Thrown when nothing was recorded yet; the output file is then unusable.
+        saved = false;
+      }
+      mediaRecorder.reset();
+      if (segmentDurationMs > 0 && saved) {
+        sendSegmentCompletedEvent(currentSegmentPath);
+      }
+      segmentDurationMs = 0;
+      currentSegmentPath = null;
+      nextSegmentPath = null;
+      Map<String, Object> event = new HashMap<>();
+      event.put("eventType", "videoRecordingStopped");
+      sendEvent(event);
+    }
+
+    private void sendSegmentCompletedEvent(String path) {
+      Map<String, Object> event = new HashMap<>();
+      event.put("eventType", "videoSegmentCompleted");
+      event.put("path", path);
+      sendEvent(event);
+    }
+
     private void stopVideoRecording(@NonNull final Result result) {
       if (!recordingVideo) {
         result.success(null);
         return;
       }
+      if (cameraDevice == null) {
+        // The camera failed during the recording; the recorder is still running.
+        endRecording();
+        result.error("cameraClosed", "The camera is closed.", null);
+        return;
+      }
 
+      long stopStartTimeMs = SystemClock.elapsedRealtime();
       try {
         recordingVideo = false;
-        mediaRecorder.stop();
-        mediaRecorder.reset();
-        startPreview();
+        recordingPaused = false;
+        if (persistentRecorderSurface != null) {
+          // Stop feeding the recorder before stopping it; the session itself is kept.
+          startPreview();
+          mediaRecorder.stop();
+          mediaRecorder.reset();
+        } else {
+          mediaRecorder.stop();
+          mediaRecorder.reset();
+          startPreview();
+        }
+        metrics.reportLatency(CameraMetrics.RECORDING_STOP, stopStartTimeMs);
+        if (segmentDurationMs > 0) {
+          sendSegmentCompletedEvent(currentSegmentPath);
+          segmentDurationMs = 0;
+        }
         result.success(null);
       } catch (CameraAccessException | IllegalStateException e) {
         result.error("videoRecordingFailed", e.getMessage(), null);
       }
     }
 
+    private void pauseVideoRecording(@NonNull final Result result) {
+      if (!recordingVideo || recordingPaused) {
+        result.success(null);
+        return;
+      }
+      if (cameraDevice == null) {
+        result.error("cameraClosed", "The camera is closed.", null);
+        return;
+      }
+      if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+        result.error("videoRecordingFailed", "pauseVideoRecording requires Android 7.0", null);
+        return;
+      }
+      try {
+        mediaRecorder.pause();
+        recordingPaused = true;
+        result.success(null);
+      } catch (IllegalStateException e) {
+        result.error("videoRecordingFailed", e.getMessage(), null);
+      }
+    }
+
+    private void resumeVideoRecording(@NonNull final Result result) {
+      if (!recordingVideo || !recordingPaused) {
+        result.success(null);
+        return;
+      }
+      if (cameraDevice == null) {
+        result.error("cameraClosed", "The camera is closed.", null);
+        return;
+      }
+      if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+        result.error("videoRecordingFailed", "resumeVideoRecording requires Android 7.0", null);
+        return;
+      }
+      try {
+        mediaRecorder.resume();
+        recordingPaused = false;
+        result.success(null);
+      } catch (IllegalStateException e) {
+        result.error("videoRecordingFailed", e.getMessage(), null);
+      }
+    }
+
+    /**
+     * Starts the repeating request for the current outputs: the preview, the image stream when it
+     * is active, and the recorder while a video is being recorded.
+     */
     private void startPreview() throws CameraAccessException {
-      closeCaptureSession();
+      startPreview(
+          null,
+          new ErrorCallback() {
+            @Override
+            public void onError(String errorCode, String errorMessage) {
+              sendErrorEvent(errorMessage);
+            }
+          });
+    }
+
+    /**
+     * Like {@link #startPreview()}, but reports the outcome to the given callbacks.
+     *
+     * <p>When the current capture session already contains every output, only its repeating
+     * request is replaced. This avoids reconfiguring the session, which takes hundreds of
+     * milliseconds and interrupts the preview. Otherwise a new session is created.
+     */
+    private void startPreview(
+        @Nullable Runnable onSuccessCallback, @NonNull ErrorCallback onErrorCallback)
+        throws CameraAccessException {
+      List<Surface> targets = new ArrayList<>();
+      targets.add(previewSurface);
+      if (imageStream.isActive()) {
+        targets.add(imageStream.getSurface(previewSize));
+      }
+      if (recordingVideo) {
+        targets.add(
+            persistentRecorderSurface != null
+                ? persistentRecorderSurface
+                : mediaRecorder.getSurface());
+      }
+
+      if (cameraCaptureSession != null && sessionOutputs.containsAll(targets)) {
+        try {
+          setRepeatingRequest(targets);
+        } catch (IllegalStateException e) {
+          onErrorCallback.onError("cameraAccess", e.getMessage());
+          return;
+        }
+        if (onSuccessCallback != null) {
+          onSuccessCallback.run();
+        }
+      } else {
+        createCaptureSession(targets, onSuccessCallback, onErrorCallback);
+      }
+    }
 
-      SurfaceTexture surfaceTexture = textureEntry.surfaceTexture();
-      surfaceTexture.setDefaultBufferSize(previewSize.getWidth(), previewSize.getHeight());
-      captureRequestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+    private void startImageStream(
+        int maxFramesInFlight,
+        int targetFps,
+        @Nullable Rect cropRect,
+        @Nullable Size targetSize,
+        @NonNull final Result result) {
+      if (cameraDevice == null) {
+        result.error("cameraAccess", "Camera is not open.", null);
+        return;
+      }
+      // Frames are streamed at the preview size.
+      if (cropRect != null
+          && !new Rect(0, 0, previewSize.getWidth(), previewSize.getHeight()).contains(cropRect)) {
+        result.error(
+            "IllegalArgumentException", "The crop rectangle must be within the preview.", null);
+        return;
+      }
+      try {
+        imageStream.start(maxFramesInFlight, targetFps, cropRect, targetSize);
+        startPreview();
+        result.success(null);
+      } catch (CameraAccessException e) {
+        result.error("cameraAccess", e.getMessage(), null);
+      } catch (IllegalArgumentException e) {
+        result.error("IllegalArgumentException", e.getMessage(), null);
+      }
+    }
 
-      List<Surface> surfaces = new ArrayList<>();
+    private void stopImageStream(@NonNull final Result result) {
+      if (!imageStream.isActive()) {
+        result.success(null);
+        return;
+      }
+      imageStream.stop();
+      if (cameraDevice == null) {
+        result.success(null);
+        return;
+      }
+      try {
+        startPreview();
+        result.success(null);
+      } catch (CameraAccessException e) {
+        result.error("cameraAccess", e.getMessage(), null);
+      }
+    }
 
-      Surface previewSurface = new Surface(surfaceTexture);
-      surfaces.add(previewSurface);
-      captureRequestBuilder.addTarget(previewSurface);
+    /**
+     * Replaces the current capture session with one that renders a repeating request to the given
+     * targets.
+     *
+     * <p>The still capture surface is always part of the session so that pictures can be taken
+     * without reconfiguring it. In the persistent session mode the recorder surface, and the image
+     * stream surface when requested, are added as well so that recording and streaming only need
+     * to change the repeating request.
+     */
+    private void createCaptureSession(
+        final List<Surface> targets,
+        @Nullable final Runnable onSuccessCallback,
+        @NonNull final ErrorCallback onErrorCallback)
+        throws CameraAccessException {
+      closeCaptureSession();
 
-      surfaces.add(imageReader.getSurface());
+      final List<Surface> outputs = new ArrayList<>(targets);
+      outputs.add(imageReader.getSurface());
+      if (persistentRecorderSurface != null && !recordingVideo) {
+        outputs.add(persistentRecorderSurface);
+      }
+      if (!imageStream.isActive()) {
+        if (persistentImageStream) {
+          outputs.add(imageStream.getSurface(previewSize));
+        } else {
+          imageStream.release();
+        }
+      }
 
       cameraDevice.createCaptureSession(
-          surfaces,
+          outputs,
           new CameraCaptureSession.StateCallback() {
-
             @Override
             public void onConfigured(@NonNull CameraCaptureSession session) {
               if (cameraDevice == null) {
-                sendErrorEvent("The camera was closed during configuration.");
+                onErrorCallback.onError(
+                    "configureFailed", "The camera was closed during configuration.");
                 return;
               }
               try {
                 cameraCaptureSession = session;
-                captureRequestBuilder.set(
-                    CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
-                cameraCaptureSession.setRepeatingRequest(captureRequestBuilder.build(), null, null);
-              } catch (CameraAccessException e) {
-                sendErrorEvent(e.getMessage());
+                sessionOutputs = outputs;
+                setRepeatingRequest(targets);
+                if (onSuccessCallback != null) {
+                  onSuccessCallback.run();
+                }
+              } catch (CameraAccessException | IllegalStateException e) {
+                onErrorCallback.onError("cameraAccess", e.getMessage());
               }
             }
 
             @Override
             public void onConfigureFailed(@NonNull CameraCaptureSession cameraCaptureSession) {
-              sendErrorEvent("Failed to configure the camera for preview.");
+              onErrorCallback.onError(
+                  "configureFailed", "Failed to configure the camera capture session.");
             }
           },
-          null);
+          backgroundHandler);
     }
 
-    private void sendErrorEvent(String errorDescription) {
-      if (eventSink != null) {
-        Map<String, String> event = new HashMap<>();
-        event.put("eventType", "error");
-        event.put("errorDescription", errorDescription);
-        eventSink.success(event);
+    private void setRepeatingRequest(List<Surface> targets) throws CameraAccessException {
+      captureRequestBuilder =
+          cameraDevice.createCaptureRequest(
+              recordingVideo ? CameraDevice.TEMPLATE_RECORD : CameraDevice.TEMPLATE_PREVIEW);
+      for (Surface target : targets) {
+        captureRequestBuilder.addTarget(target);
       }
+      captureRequestBuilder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
+      metrics.onRepeatingRequestChanged();
+      cameraCaptureSession.setRepeatingRequest(
+          captureRequestBuilder.build(), metrics, backgroundHandler);
+    }
+
+    private void sendErrorEvent(String errorDescription) {
+      Map<String, Object> event = new HashMap<>();
+      event.put("eventType", "error");
+      event.put("errorDescription", errorDescription);
+      sendEvent(event);
+    }
+
+    /** Sends an event to Dart from any thread. */
+    private void sendEvent(final Map<String, Object> event) {
+      mainHandler.post(
+          new Runnable() {
+            @Override
+            public void run() {
+              if (eventSink != null) {
+                eventSink.success(event);
+              }
+            }
+          });
     }
 
     private void closeCaptureSession() {
@@ -711,10 +1764,12 @@ public class CameraPlugin implements MethodCallHandler {
         cameraCaptureSession.close();
         cameraCaptureSession = null;
       }
+      sessionOutputs = Collections.emptyList();
     }
 
     private void close() {
       closeCaptureSession();
+      endRecording();
 
       if (cameraDevice != null) {
         cameraDevice.close();
@@ -724,16 +1779,46 @@ public class CameraPlugin implements MethodCallHandler {
         imageReader.close();
         imageReader = null;
       }
+      imageStream.release();
       if (mediaRecorder != null) {
         mediaRecorder.reset();
         mediaRecorder.release();
         mediaRecorder = null;
       }
+      if (persistentRecorderSurface != null) {
+        persistentRecorderSurface.release();
+        persistentRecorderSurface = null;
+      }
+      if (previewSurface != null) {
+        previewSurface.release();
+        previewSurface = null;
+      }
     }
 
     private void dispose() {
-      close();
-      textureEntry.release();
+      if (disposed) {
+        return;
+      }
+      disposed = true;
+      backgroundHandler.post(
+          new Runnable() {
+            @Override
+            public void run() {
+              close();
+              imageStream.stop();
+              // Pending file writes are allowed to complete.
+              ioExecutor.shutdown();
+              mainHandler.post(
+                  new Runnable() {
+                    @Override
+                    public void run() {
+                      imageStream.dispose();
+                      textureEntry.release();
+                    }
+                  });
+              backgroundThread.quitSafely();
+            }
+          });
     }
   }
 }
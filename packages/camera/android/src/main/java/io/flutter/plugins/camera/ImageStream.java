@@ -0,0 +1,343 @@
+// Copyright 2018 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.camera;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.util.Size;
+import android.view.Surface;
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.EventChannel;
+import io.flutter.plugin.common.StandardMethodCodec;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streams {@link ImageFormat#YUV_420_888} frames of a camera to Dart over a dedicated {@link
+ * EventChannel}.
+ *
+ * <p>Frames are read and encoded on the camera thread; only the send of the encoded message is
+ * posted to the platform thread. The bytes of every plane are copied into arrays that are reused
+ * from one frame to the next. Since a frame is fully encoded before the next one is read, the
+ * arrays can safely be overwritten and steady-state streaming does not allocate plane buffers.
+ *
+ * <p>Dart acknowledges every frame with {@link #onFrameProcessed()}. At most {@code
+ * maxFramesInFlight} unacknowledged frames are sent; beyond that, and when frames arrive faster
+ * than the target frame rate, frames are dropped here instead of being queued on the platform
+ * thread. Only the latest image is ever acquired from the reader, so the camera never runs out of
+ * buffers because of a slow consumer.
+ *
+ * <p>When a crop rectangle or a target size is set, frames are cropped and resampled with nearest
+ * neighbor sampling while their planes are copied, and tightly packed planes of the target size
+ * are sent instead of the full frame.
+ */
+class ImageStream implements ImageReader.OnImageAvailableListener {
+  /** Receives the frame counters of the stream about once per second while it is active. */
+  interface StatisticsListener {
+    void onStatistics(long deliveredFrames, long droppedFrames);
+  }
+
+  static final int DEFAULT_MAX_FRAMES_IN_FLIGHT = 2;
+
+  // One image being copied, one queued by the camera and one spare so the producer never stalls.
+  private static final int MAX_IMAGES = 3;
+  private static final long STATISTICS_INTERVAL_MS = 1000;
+
+  private final AtomicInteger framesInFlight = new AtomicInteger();
+  private final StatisticsListener statisticsListener;
+  private final BinaryMessenger messenger;
+  private final String channelName;
+  private final EventChannel eventChannel;
+  private final Handler cameraHandler;
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  private volatile boolean listening;
+  private ImageReader imageReader;
+  private Size size;
+  private volatile boolean active;
+  private byte[][] planeBuffers = new byte[0][];
+  private int maxFramesInFlight = DEFAULT_MAX_FRAMES_IN_FLIGHT;
+  private long minFrameIntervalNs;
+  // The region of the frames to send, or null for the whole frame.
+  @Nullable private Rect cropRect;
+  // The size frames are resampled to, or null to send them at the size of cropRect.
+  @Nullable private Size targetSize;
+  private long lastDeliveredTimestampNs;
+  private long deliveredFrames;
+  private long droppedFrames;
+  private long lastStatisticsTimeMs;
+
+  ImageStream(
+      BinaryMessenger messenger,
+      long textureId,
+      Handler cameraHandler,
+      StatisticsListener statisticsListener) {
+    this.messenger = messenger;
+    this.cameraHandler = cameraHandler;
+    this.statisticsListener = statisticsListener;
+    channelName = "flutter.io/cameraPlugin/imageStream" + textureId;
+    eventChannel = new EventChannel(messenger, channelName);
+    eventChannel.setStreamHandler(
+        new EventChannel.StreamHandler() {
+          @Override
+          public void onListen(Object arguments, EventChannel.EventSink eventSink) {
+            listening = true;
+          }
+
+          @Override
+          public void onCancel(Object arguments) {
+            listening = false;
+          }
+        });
+  }
+
+  boolean isActive() {
+    return active;
+  }
+
+  /**
+   * Starts delivering the frames rendered to the stream's surface.
+   *
+   * @param maxFramesInFlight the number of frames that may be sent before Dart acknowledges them.
+   * @param targetFps the maximum number of frames delivered per second, or 0 for no limit.
+   * @param cropRect the region of the frames to send, or null for the whole frame.
+   * @param targetSize the size frames are resampled to, or null to keep the size of the region.
+   */
+  void start(
+      int maxFramesInFlight, int targetFps, @Nullable Rect cropRect, @Nullable Size targetSize) {
+    if (maxFramesInFlight < 1) {
+      throw new IllegalArgumentException("maxFramesInFlight must be at least 1.");
+    }
+    if (targetFps < 0) {
+      throw new IllegalArgumentException("targetFps must not be negative.");
+    }
+    if (cropRect != null && (cropRect.width() < 2 || cropRect.height() < 2)) {
+      throw new IllegalArgumentException("The crop rectangle must be at least 2x2 pixels.");
+    }
+    if (targetSize != null && (targetSize.getWidth() < 2 || targetSize.getHeight() < 2)) {
+      throw new IllegalArgumentException("The target size must be at least 2x2 pixels.");
+    }
+    this.cropRect = cropRect;
+    this.targetSize = targetSize;
+    this.maxFramesInFlight = maxFramesInFlight;
+    minFrameIntervalNs = targetFps == 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / targetFps;
+    framesInFlight.set(0);
+    lastDeliveredTimestampNs = 0;
+    deliveredFrames = 0;
+    droppedFrames = 0;
+    lastStatisticsTimeMs = SystemClock.elapsedRealtime();
+    active = true;
+  }
+
+  /** Called when Dart is done with a frame, allowing another one to be sent. */
+  void onFrameProcessed() {
+    if (framesInFlight.decrementAndGet() < 0) {
+      framesInFlight.set(0);
+    }
+  }
+
+  /**
+   * Stops delivering frames.
+   *
+   * <p>The reader is kept so that a capture session containing its surface stays valid; frames
+   * rendered to it in the meantime are discarded.
+   */
+  void stop() {
+    active = false;
+  }
+
+  /**
+   * Returns the surface frames should be rendered to.
+   *
+   * <p>The reader is created lazily so that the stream survives the camera being closed and
+   * reopened, e.g. when the activity is paused.
+   */
+  Surface getSurface(Size size) {
+    if (imageReader != null && !size.equals(this.size)) {
+      release();
+    }
+    this.size = size;
+    if (imageReader == null) {
+      imageReader =
+          ImageReader.newInstance(
+              size.getWidth(), size.getHeight(), ImageFormat.YUV_420_888, MAX_IMAGES);
+      imageReader.setOnImageAvailableListener(this, cameraHandler);
+    }
+    return imageReader.getSurface();
+  }
+
+  /** Releases the {@link ImageReader} without stopping the stream. */
+  void release() {
+    if (imageReader != null) {
+      imageReader.close();
+      imageReader = null;
+    }
+  }
+
+  void dispose() {
+    stop();
+    release();
+    eventChannel.setStreamHandler(null);
+    listening = false;
+  }
+
+  @Override
+  public void onImageAvailable(ImageReader reader) {
+    Image image = reader.acquireLatestImage();
+    if (image == null) {
+      return;
+    }
+    try {
+      if (!active || !listening) {
+        return;
+      }
+      long timestampNs = image.getTimestamp();
+      if (framesInFlight.get() >= maxFramesInFlight
+          || (lastDeliveredTimestampNs != 0
+              && timestampNs - lastDeliveredTimestampNs < minFrameIntervalNs)) {
+        droppedFrames++;
+      } else {
+        framesInFlight.incrementAndGet();
+        lastDeliveredTimestampNs = timestampNs;
+        deliveredFrames++;
+        Map<String, Object> imageBuffer =
+            cropRect == null && targetSize == null
+                ? serializeImage(image)
+                : serializeResampledImage(image);
+        send(StandardMethodCodec.INSTANCE.encodeSuccessEnvelope(imageBuffer));
+      }
+      reportStatistics();
+    } finally {
+      image.close();
+    }
+  }
+
+  /** Sends an encoded event the same way {@link EventChannel.EventSink#success} would. */
+  private void send(final ByteBuffer event) {
+    mainHandler.post(
+        new Runnable() {
+          @Override
+          public void run() {
+            if (listening) {
+              messenger.send(channelName, event);
+            } else {
+              onFrameProcessed();
+            }
+          }
+        });
+  }
+
+  private void reportStatistics() {
+    long now = SystemClock.elapsedRealtime();
+    if (now - lastStatisticsTimeMs >= STATISTICS_INTERVAL_MS) {
+      lastStatisticsTimeMs = now;
+      statisticsListener.onStatistics(deliveredFrames, droppedFrames);
+    }
+  }
+
+  private Map<String, Object> serializeImage(Image image) {
+    Image.Plane[] planes = image.getPlanes();
+    if (planeBuffers.length != planes.length) {
+      planeBuffers = new byte[planes.length][];
+    }
+
+    List<Map<String, Object>> planeList = new ArrayList<>(planes.length);
+    for (int i = 0; i < planes.length; i++) {
+      ByteBuffer buffer = planes[i].getBuffer();
+      int length = buffer.remaining();
+      buffer.get(getPlaneBuffer(i, length), 0, length);
+
+      Map<String, Object> planeBuffer = new HashMap<>();
+      planeBuffer.put("bytesPerRow", planes[i].getRowStride());
+      planeBuffer.put("bytesPerPixel", planes[i].getPixelStride());
+      planeBuffer.put("bytes", planeBuffers[i]);
+      planeList.add(planeBuffer);
+    }
+
+    Map<String, Object> imageBuffer = new HashMap<>();
+    imageBuffer.put("width", image.getWidth());
+    imageBuffer.put("height", image.getHeight());
+    imageBuffer.put("format", image.getFormat());
+    imageBuffer.put("planes", planeList);
+    return imageBuffer;
+  }
+
+  /**
+   * Serializes {@code cropRect} of the image resampled to {@code targetSize}.
+   *
+   * <p>Only the sampled bytes are read from the planes, so a small target costs a fraction of
+   * copying the whole frame. The planes of the result are tightly packed, with the chroma planes
+   * subsampled by two in both directions as in {@link ImageFormat#YUV_420_888}.
+   */
+  private Map<String, Object> serializeResampledImage(Image image) {
+    Rect crop = cropRect != null ? cropRect : new Rect(0, 0, image.getWidth(), image.getHeight());
+    // Even sizes keep the chroma planes aligned with the luma plane.
+    int width = (targetSize != null ? targetSize.getWidth() : crop.width()) & ~1;
+    int height = (targetSize != null ? targetSize.getHeight() : crop.height()) & ~1;
+
+    Image.Plane[] planes = image.getPlanes();
+    if (planeBuffers.length != planes.length) {
+      planeBuffers = new byte[planes.length][];
+    }
+
+    List<Map<String, Object>> planeList = new ArrayList<>(planes.length);
+    for (int i = 0; i < planes.length; i++) {
+      int subsampling = i == 0 ? 1 : 2;
+      int planeWidth = width / subsampling;
+      int planeHeight = height / subsampling;
+      byte[] bytes = getPlaneBuffer(i, planeWidth * planeHeight);
+      resample(planes[i], crop, subsampling, planeWidth, planeHeight, bytes);
+
+      Map<String, Object> planeBuffer = new HashMap<>();
+      planeBuffer.put("bytesPerRow", planeWidth);
+      planeBuffer.put("bytesPerPixel", 1);
+      planeBuffer.put("bytes", bytes);
+      planeList.add(planeBuffer);
+    }
+
+    Map<String, Object> imageBuffer = new HashMap<>();
+    imageBuffer.put("width", width);
+    imageBuffer.put("height", height);
+    imageBuffer.put("format", image.getFormat());
+    imageBuffer.put("planes", planeList);
+    return imageBuffer;
+  }
+
+  private static void resample(
+      Image.Plane plane, Rect crop, int subsampling, int width, int height, byte[] output) {
+    ByteBuffer buffer = plane.getBuffer();
+    int rowStride = plane.getRowStride();
+    int pixelStride = plane.getPixelStride();
+    int left = crop.left / subsampling;
+    int top = crop.top / subsampling;
+    int cropWidth = crop.width() / subsampling;
+    int cropHeight = crop.height() / subsampling;
+
+    int index = 0;
+    for (int y = 0; y < height; y++) {
+      int rowOffset = (top + y * cropHeight / height) * rowStride;
+      for (int x = 0; x < width; x++) {
+        output[index++] = buffer.get(rowOffset + (left + x * cropWidth / width) * pixelStride);
+      }
+    }
+  }
+
+  private byte[] getPlaneBuffer(int plane, int length) {
+    if (planeBuffers[plane] == null || planeBuffers[plane].length != length) {
+      planeBuffers[plane] = new byte[length];
+    }
+    return planeBuffers[plane];
+  }
+}
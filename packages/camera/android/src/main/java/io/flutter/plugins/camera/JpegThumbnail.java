@@ -0,0 +1,86 @@
+// Copyright 2018 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.camera;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/** Writes small previews of captured JPEGs without decoding them at full resolution. */
+final class JpegThumbnail {
+  private static final int QUALITY = 85;
+
+  /**
+   * Writes a thumbnail of {@code jpeg}, whose longest side is at most {@code maxSize} pixels, to
+   * {@code thumbnailFile}.
+   *
+   * <p>The image is decoded with the largest power-of-two {@link
+   * BitmapFactory.Options#inSampleSize} that keeps it at least {@code maxSize} pixels large, so a
+   * 12 MP picture needs a few hundred kilobytes instead of tens of megabytes. It is then scaled
+   * to size and rotated according to the EXIF orientation of {@code sourceFile}.
+   */
+  static void write(byte[] jpeg, File sourceFile, File thumbnailFile, int maxSize)
+      throws IOException {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+    if (options.outWidth <= 0 || options.outHeight <= 0) {
+      throw new IOException("Failed decoding image");
+    }
+
+    int longestSide = Math.max(options.outWidth, options.outHeight);
+    options.inSampleSize = 1;
+    while (longestSide / (options.inSampleSize * 2) >= maxSize) {
+      options.inSampleSize *= 2;
+    }
+    options.inJustDecodeBounds = false;
+    Bitmap sampled = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+    if (sampled == null) {
+      throw new IOException("Failed decoding image");
+    }
+
+    Matrix matrix = new Matrix();
+    int sampledLongestSide = Math.max(sampled.getWidth(), sampled.getHeight());
+    float scale = Math.min(1f, (float) maxSize / sampledLongestSide);
+    matrix.postScale(scale, scale);
+    matrix.postRotate(getRotationDegrees(sourceFile));
+    Bitmap thumbnail =
+        Bitmap.createBitmap(sampled, 0, 0, sampled.getWidth(), sampled.getHeight(), matrix, true);
+
+    try (FileOutputStream outputStream = new FileOutputStream(thumbnailFile)) {
+      if (!thumbnail.compress(Bitmap.CompressFormat.JPEG, QUALITY, outputStream)) {
+        throw new IOException("Failed encoding thumbnail");
+      }
+    } finally {
+      if (thumbnail != sampled) {
+        thumbnail.recycle();
+      }
+      sampled.recycle();
+    }
+  }
+
+  private static int getRotationDegrees(File file) throws IOException {
+    int orientation =
+        new ExifInterface(file.getPath())
+            .getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+    switch (orientation) {
+      case ExifInterface.ORIENTATION_ROTATE_90:
+        return 90;
+      case ExifInterface.ORIENTATION_ROTATE_180:
+        return 180;
+      case ExifInterface.ORIENTATION_ROTATE_270:
+        return 270;
+      default:
+        return 0;
+    }
+  }
+
+  // Should never be instantiated.
+  private JpegThumbnail() {}
+}
@@ -0,0 +1,159 @@
+// Copyright 2018 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.camera;
+
+import android.media.CamcorderProfile;
+import android.media.MediaRecorder;
+import android.os.Build;
+import android.support.annotation.Nullable;
+import android.util.Size;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The encoder settings used to record videos.
+ *
+ * <p>A profile starts either from {@link #DEFAULT} or from one of the device's {@link
+ * CamcorderProfile}s, and individual settings can be overridden with {@link #withOverrides}.
+ */
+final class RecordingProfile {
+  static final String H264 = "h264";
+  static final String HEVC = "hevc";
+
+  /** The settings used when no profile has been set. */
+  static final RecordingProfile DEFAULT =
+      new RecordingProfile(1024 * 1000, 27, 16000, 0, H264, null);
+
+  final int videoBitRate;
+  final int videoFrameRate;
+  final int audioSamplingRate;
+  // 0 leaves the audio bit rate to the encoder.
+  final int audioBitRate;
+  final String videoEncoder;
+  // The requested video size, or null to record at the size chosen from the resolution preset.
+  @Nullable final Size videoSize;
+
+  private RecordingProfile(
+      int videoBitRate,
+      int videoFrameRate,
+      int audioSamplingRate,
+      int audioBitRate,
+      String videoEncoder,
+      @Nullable Size videoSize) {
+    this.videoBitRate = videoBitRate;
+    this.videoFrameRate = videoFrameRate;
+    this.audioSamplingRate = audioSamplingRate;
+    this.audioBitRate = audioBitRate;
+    this.videoEncoder = videoEncoder;
+    this.videoSize = videoSize;
+  }
+
+  /**
+   * Returns the device's {@link CamcorderProfile} for {@code preset} on the given camera.
+   *
+   * @throws IllegalArgumentException if the preset is unknown or not supported by the camera.
+   */
+  static RecordingProfile fromPreset(String cameraName, String preset) {
+    int quality;
+    switch (preset) {
+      case "low":
+        quality = CamcorderProfile.QUALITY_LOW;
+        break;
+      case "high":
+        quality = CamcorderProfile.QUALITY_HIGH;
+        break;
+      case "480p":
+        quality = CamcorderProfile.QUALITY_480P;
+        break;
+      case "720p":
+        quality = CamcorderProfile.QUALITY_720P;
+        break;
+      case "1080p":
+        quality = CamcorderProfile.QUALITY_1080P;
+        break;
+      case "2160p":
+        quality = CamcorderProfile.QUALITY_2160P;
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown recording preset: " + preset);
+    }
+
+    int cameraId;
+    try {
+      cameraId = Integer.parseInt(cameraName);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(
+          "Recording presets are not available for camera " + cameraName);
+    }
+    if (!CamcorderProfile.hasProfile(cameraId, quality)) {
+      throw new IllegalArgumentException(
+          "Recording preset " + preset + " is not supported by camera " + cameraName);
+    }
+
+    CamcorderProfile profile = CamcorderProfile.get(cameraId, quality);
+    String videoEncoder = H264;
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+        && profile.videoCodec == MediaRecorder.VideoEncoder.HEVC) {
+      videoEncoder = HEVC;
+    }
+    return new RecordingProfile(
+        profile.videoBitRate,
+        profile.videoFrameRate,
+        profile.audioSampleRate,
+        profile.audioBitRate,
+        videoEncoder,
+        new Size(profile.videoFrameWidth, profile.videoFrameHeight));
+  }
+
+  /** Returns a copy of this profile with every non-null argument replacing the current value. */
+  RecordingProfile withOverrides(
+      @Nullable Integer videoBitRate,
+      @Nullable Integer videoFrameRate,
+      @Nullable Integer audioSamplingRate,
+      @Nullable Integer audioBitRate,
+      @Nullable String videoEncoder) {
+    if (videoEncoder != null && !videoEncoder.equals(H264) && !videoEncoder.equals(HEVC)) {
+      throw new IllegalArgumentException("Unknown video encoder: " + videoEncoder);
+    }
+    if (HEVC.equals(videoEncoder) && Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+      throw new IllegalArgumentException("HEVC recording requires Android 7.0 or later");
+    }
+    return new RecordingProfile(
+        videoBitRate != null ? videoBitRate : this.videoBitRate,
+        videoFrameRate != null ? videoFrameRate : this.videoFrameRate,
+        audioSamplingRate != null ? audioSamplingRate : this.audioSamplingRate,
+        audioBitRate != null ? audioBitRate : this.audioBitRate,
+        videoEncoder != null ? videoEncoder : this.videoEncoder,
+        videoSize);
+  }
+
+  /** Configures the encoders of a {@link MediaRecorder} whose output format has been set. */
+  void applyTo(MediaRecorder mediaRecorder) {
+    mediaRecorder.setAudioEncoder(MediaRecorder.AudioEncoder.AAC);
+    if (HEVC.equals(videoEncoder) && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+      mediaRecorder.setVideoEncoder(MediaRecorder.VideoEncoder.HEVC);
+    } else {
+      mediaRecorder.setVideoEncoder(MediaRecorder.VideoEncoder.H264);
+    }
+    mediaRecorder.setVideoEncodingBitRate(videoBitRate);
+    mediaRecorder.setAudioSamplingRate(audioSamplingRate);
+    if (audioBitRate > 0) {
+      mediaRecorder.setAudioEncodingBitRate(audioBitRate);
+    }
+    mediaRecorder.setVideoFrameRate(videoFrameRate);
+  }
+
+  Map<String, Object> toMap(Size actualVideoSize) {
+    Map<String, Object> map = new HashMap<>();
+    map.put("videoBitRate", videoBitRate);
+    map.put("videoFrameRate", videoFrameRate);
+    map.put("audioSamplingRate", audioSamplingRate);
+    map.put("audioBitRate", audioBitRate);
+    map.put("videoEncoder", videoEncoder);
+    map.put("videoWidth", actualVideoSize.getWidth());
+    map.put("videoHeight", actualVideoSize.getHeight());
+    return map;
+  }
+}
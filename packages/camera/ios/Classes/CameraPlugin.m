@@ -99,7 +99,14 @@
   NSAssert(self, @"super init cannot be nil");
   _captureSession = [[AVCaptureSession alloc] init];
   AVCaptureSessionPreset preset;
-  if ([resolutionPreset isEqualToString:@"high"]) {
+  if ([resolutionPreset isEqualToString:@"max"] &&
+      [_captureSession canSetSessionPreset:AVCaptureSessionPreset3840x2160]) {
+    preset = AVCaptureSessionPreset3840x2160;
+  } else if ([resolutionPreset isEqualToString:@"ultraHigh"] || [resolutionPreset isEqualToString:@"max"]) {
+    preset = AVCaptureSessionPreset1920x1080;
+  } else if ([resolutionPreset isEqualToString:@"veryHigh"]) {
+    preset = AVCaptureSessionPreset1280x720;
+  } else if ([resolutionPreset isEqualToString:@"high"]) {
     preset = AVCaptureSessionPresetHigh;
   } else if ([resolutionPreset isEqualToString:@"medium"]) {
     preset = AVCaptureSessionPresetMedium;
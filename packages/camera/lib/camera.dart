@@ -1,4 +1,5 @@
 import 'dart:async';
+import 'dart:typed_data';
 
 import 'package:flutter/services.dart';
 import 'package:flutter/widgets.dart';
@@ -8,11 +9,23 @@ final MethodChannel _channel = const MethodChannel('plugins.flutter.io/camera')
 
 enum CameraLensDirection { front, back, external }
 
-enum ResolutionPreset { low, medium, high }
+/// Affects the quality of video recording and image capture.
+///
+/// The legacy presets [low], [medium] and [high] select the smallest preview
+/// larger than 320x240, 640x480 and 1024x768 respectively. [veryHigh] and
+/// [ultraHigh] select the smallest preview of at least 1280x720 and 1920x1080,
+/// and [max] the largest one available.
+enum ResolutionPreset { low, medium, high, veryHigh, ultraHigh, max }
 
 /// Returns the resolution preset as a String.
 String serializeResolutionPreset(ResolutionPreset resolutionPreset) {
   switch (resolutionPreset) {
+    case ResolutionPreset.max:
+      return 'max';
+    case ResolutionPreset.ultraHigh:
+      return 'ultraHigh';
+    case ResolutionPreset.veryHigh:
+      return 'veryHigh';
     case ResolutionPreset.high:
       return 'high';
     case ResolutionPreset.medium:
@@ -23,6 +36,91 @@ String serializeResolutionPreset(ResolutionPreset resolutionPreset) {
   throw new ArgumentError('Unknown ResolutionPreset value');
 }
 
+/// Device-tuned recording settings, based on Android's `CamcorderProfile`s.
+enum RecordingPreset { low, high, p480, p720, p1080, p2160 }
+
+/// The codec used to encode recorded videos.
+enum VideoEncoder { h264, hevc }
+
+String _serializeRecordingPreset(RecordingPreset preset) {
+  switch (preset) {
+    case RecordingPreset.low:
+      return 'low';
+    case RecordingPreset.high:
+      return 'high';
+    case RecordingPreset.p480:
+      return '480p';
+    case RecordingPreset.p720:
+      return '720p';
+    case RecordingPreset.p1080:
+      return '1080p';
+    case RecordingPreset.p2160:
+      return '2160p';
+  }
+  throw new ArgumentError('Unknown RecordingPreset value');
+}
+
+String _serializeVideoEncoder(VideoEncoder encoder) {
+  switch (encoder) {
+    case VideoEncoder.h264:
+      return 'h264';
+    case VideoEncoder.hevc:
+      return 'hevc';
+  }
+  throw new ArgumentError('Unknown VideoEncoder value');
+}
+
+VideoEncoder _parseVideoEncoder(String string) {
+  switch (string) {
+    case 'h264':
+      return VideoEncoder.h264;
+    case 'hevc':
+      return VideoEncoder.hevc;
+  }
+  throw new ArgumentError('Unknown VideoEncoder value');
+}
+
+/// The encoder settings applied to video recordings.
+class RecordingProfile {
+  RecordingProfile._fromPlatformData(Map<dynamic, dynamic> data)
+      : videoBitRate = data['videoBitRate'],
+        videoFrameRate = data['videoFrameRate'],
+        audioSamplingRate = data['audioSamplingRate'],
+        audioBitRate = data['audioBitRate'],
+        videoEncoder = _parseVideoEncoder(data['videoEncoder']),
+        videoSize = new Size(
+          data['videoWidth'].toDouble(),
+          data['videoHeight'].toDouble(),
+        );
+
+  /// The video bit rate, in bits per second.
+  final int videoBitRate;
+
+  /// The video frame rate, in frames per second.
+  final int videoFrameRate;
+
+  /// The audio sampling rate, in samples per second.
+  final int audioSamplingRate;
+
+  /// The audio bit rate, in bits per second, or 0 when chosen by the encoder.
+  final int audioBitRate;
+
+  /// The codec used to encode the video.
+  final VideoEncoder videoEncoder;
+
+  /// The size of recorded videos in pixels.
+  final Size videoSize;
+
+  @override
+  String toString() => '$runtimeType('
+      'videoBitRate: $videoBitRate, '
+      'videoFrameRate: $videoFrameRate, '
+      'audioSamplingRate: $audioSamplingRate, '
+      'audioBitRate: $audioBitRate, '
+      'videoEncoder: $videoEncoder, '
+      'videoSize: $videoSize)';
+}
+
 CameraLensDirection _parseCameraLensDirection(String string) {
   switch (string) {
     case 'front':
@@ -88,6 +186,142 @@ class CameraException implements Exception {
   String toString() => '$runtimeType($code, $description)';
 }
 
+/// A single color plane of a [CameraImage].
+class Plane {
+  Plane._fromPlatformData(Map<dynamic, dynamic> data)
+      : bytes = data['bytes'],
+        bytesPerPixel = data['bytesPerPixel'],
+        bytesPerRow = data['bytesPerRow'];
+
+  /// Bytes representing this plane.
+  final Uint8List bytes;
+
+  /// The distance between adjacent pixel samples in bytes.
+  final int bytesPerPixel;
+
+  /// The row stride for this color plane, in bytes.
+  final int bytesPerRow;
+}
+
+/// A frame delivered by [CameraController.startImageStream].
+///
+/// On Android the image is in the YUV_420_888 format, with one [Plane] per
+/// color channel.
+class CameraImage {
+  CameraImage._fromPlatformData(Map<dynamic, dynamic> data)
+      : format = data['format'],
+        height = data['height'],
+        width = data['width'],
+        planes = new List<Plane>.unmodifiable(data['planes'].map(
+            (dynamic planeData) => new Plane._fromPlatformData(planeData)));
+
+  /// The raw Android `ImageFormat` constant of the image.
+  final int format;
+
+  /// Height of the image in pixels.
+  final int height;
+
+  /// Width of the image in pixels.
+  final int width;
+
+  /// The pixels of the image, one [Plane] per color channel.
+  final List<Plane> planes;
+}
+
+/// Signature of the callback invoked for every frame of an image stream.
+///
+/// If the callback returns a [Future], the frame counts as in flight until
+/// the future completes.
+typedef dynamic OnLatestImageAvailable(CameraImage image);
+
+/// Frame counters of an image stream, reported about once per second.
+class ImageStreamStatistics {
+  const ImageStreamStatistics(this.deliveredFrames, this.droppedFrames);
+
+  /// The number of frames sent to Dart since the stream was started.
+  final int deliveredFrames;
+
+  /// The number of frames dropped on the native side since the stream was
+  /// started, either because too many frames were in flight or to honor the
+  /// target frame rate.
+  final int droppedFrames;
+
+  @override
+  String toString() => '$runtimeType($deliveredFrames, $droppedFrames)';
+}
+
+/// Signature of the callback invoked with the path of each completed segment
+/// of a segmented recording.
+typedef void OnVideoSegmentCompleted(String path);
+
+/// Signature of the callback receiving [ImageStreamStatistics].
+typedef void OnImageStreamStatistics(ImageStreamStatistics statistics);
+
+/// The latencies measured by [CameraMetric]s.
+enum CameraLatency {
+  /// From opening the camera to its first completed preview frame.
+  firstPreviewFrame,
+
+  /// From requesting a picture to its file being written.
+  stillCapture,
+
+  /// From starting a recording (or one of its segments) to the recorder
+  /// running.
+  recordingStart,
+
+  /// From stopping a recording to the preview running without the recorder.
+  recordingStop,
+}
+
+CameraLatency _parseCameraLatency(String latency) {
+  switch (latency) {
+    case 'firstPreviewFrame':
+      return CameraLatency.firstPreviewFrame;
+    case 'stillCapture':
+      return CameraLatency.stillCapture;
+    case 'recordingStart':
+      return CameraLatency.recordingStart;
+    case 'recordingStop':
+      return CameraLatency.recordingStop;
+  }
+  return null;
+}
+
+/// A measurement reported by the native camera implementation.
+///
+/// Either [latency] and [duration] are set, or the dropped frame counters
+/// are. The counters are totals since the camera was initialized and are
+/// reported at most once per second when they change.
+class CameraMetric {
+  const CameraMetric.latency(this.latency, this.duration)
+      : failedFrames = null,
+        skippedFrames = null;
+
+  const CameraMetric.droppedFrames(this.failedFrames, this.skippedFrames)
+      : latency = null,
+        duration = null;
+
+  /// The measured latency, or null for dropped frame counters.
+  final CameraLatency latency;
+
+  /// The duration of [latency].
+  final Duration duration;
+
+  /// The number of preview frames the camera failed to capture.
+  final int failedFrames;
+
+  /// The number of frames missing between consecutive preview frames.
+  final int skippedFrames;
+
+  @override
+  String toString() => latency != null
+      ? '$runtimeType($latency, $duration)'
+      : '$runtimeType($failedFrames, $skippedFrames)';
+}
+
+/// Signature of the callback receiving [CameraMetric]s.
+typedef void OnCameraMetric(CameraMetric metric);
+
 // Build the UI texture view of the video data with textureId.
 class CameraPreview extends StatelessWidget {
   final CameraController controller;
@@ -113,6 +347,18 @@ class CameraValue {
   /// True when the camera is recording (not the same as previewing).
   final bool isRecordingVideo;
 
+  /// True when images from the camera are being streamed.
+  final bool isStreamingImages;
+
+  /// True when the current video recording is paused.
+  final bool isRecordingPaused;
+
+  /// True when the camera was closed to let another camera open, on devices
+  /// that cannot run both at once.
+  ///
+  /// The camera is reopened automatically once another camera is disposed.
+  final bool isSuspended;
+
   final String errorDescription;
 
   /// The size of the preview in pixels.
@@ -126,13 +372,19 @@ class CameraValue {
     this.previewSize,
     this.isRecordingVideo,
     this.isTakingPicture,
+    this.isStreamingImages,
+    this.isRecordingPaused,
+    this.isSuspended,
   });
 
   const CameraValue.uninitialized()
       : this(
             isInitialized: false,
             isRecordingVideo: false,
-            isTakingPicture: false);
+            isTakingPicture: false,
+            isStreamingImages: false,
+            isRecordingPaused: false,
+            isSuspended: false);
 
   /// Convenience getter for `previewSize.height / previewSize.width`.
   ///
@@ -145,6 +397,9 @@ class CameraValue {
     bool isInitialized,
     bool isRecordingVideo,
     bool isTakingPicture,
+    bool isStreamingImages,
+    bool isRecordingPaused,
+    bool isSuspended,
     String errorDescription,
     Size previewSize,
   }) {
@@ -154,6 +409,9 @@ class CameraValue {
       previewSize: previewSize ?? this.previewSize,
       isRecordingVideo: isRecordingVideo ?? this.isRecordingVideo,
       isTakingPicture: isTakingPicture ?? this.isTakingPicture,
+      isStreamingImages: isStreamingImages ?? this.isStreamingImages,
+      isRecordingPaused: isRecordingPaused ?? this.isRecordingPaused,
+      isSuspended: isSuspended ?? this.isSuspended,
     );
   }
 
@@ -163,6 +421,9 @@ class CameraValue {
         'isRecordingVideo: $isRecordingVideo, '
         'isRecordingVideo: $isRecordingVideo, '
         'isInitialized: $isInitialized, '
+        'isStreamingImages: $isStreamingImages, '
+        'isRecordingPaused: $isRecordingPaused, '
+        'isSuspended: $isSuspended, '
         'errorDescription: $errorDescription, '
         'previewSize: $previewSize)';
   }
@@ -179,13 +440,58 @@ class CameraController extends ValueNotifier<CameraValue> {
   final CameraDescription description;
   final ResolutionPreset resolutionPreset;
 
+  /// The minimum preview size to use instead of [resolutionPreset].
+  ///
+  /// The smallest preview size at least this large is selected, preferring
+  /// sizes with the aspect ratio of captured pictures.
+  final Size requestedPreviewSize;
+
+  /// Whether the camera keeps a single capture session for preview, pictures
+  /// and video recording.
+  ///
+  /// Starting and stopping a recording then only changes what the camera
+  /// renders to, which is faster and does not interrupt the preview. Only
+  /// available on Android 6.0 or later; ignored elsewhere.
+  final bool persistentSession;
+
+  /// Whether the image stream is part of the capture session from the start,
+  /// so that [startImageStream] and [stopImageStream] do not reconfigure it.
+  ///
+  /// Some devices cannot render to this many outputs at once, in which case
+  /// [initialize] fails. Only used on Android.
+  final bool persistentImageStream;
+
+  /// Whether cameras initialized by other controllers stay open.
+  ///
+  /// By default, initializing a controller closes every other camera. When
+  /// true, several cameras can be used at the same time, e.g. the front and
+  /// back cameras. On devices that cannot run them concurrently, the least
+  /// recently used camera is suspended (see [CameraValue.isSuspended]) so
+  /// that this one can open. Only supported on Android.
+  final bool keepOtherCamerasOpen;
+
+  /// Called with the latencies and dropped frame counters measured natively.
+  ///
+  /// Only reported on Android.
+  final OnCameraMetric onMetric;
+
   int _textureId;
   bool _isDisposed = false;
   StreamSubscription<dynamic> _eventSubscription;
+  StreamSubscription<dynamic> _imageStreamSubscription;
+  OnImageStreamStatistics _onImageStreamStatistics;
+  OnVideoSegmentCompleted _onVideoSegmentCompleted;
   Completer<Null> _creatingCompleter;
 
-  CameraController(this.description, this.resolutionPreset)
-      : super(const CameraValue.uninitialized());
+  CameraController(
+    this.description,
+    this.resolutionPreset, {
+    this.requestedPreviewSize,
+    this.persistentSession = false,
+    this.persistentImageStream = false,
+    this.keepOtherCamerasOpen = false,
+    this.onMetric,
+  }) : super(const CameraValue.uninitialized());
 
   /// Initializes the camera on the device.
   ///
@@ -201,6 +507,11 @@ class CameraController extends ValueNotifier<CameraValue> {
         <String, dynamic>{
           'cameraName': description.name,
           'resolutionPreset': serializeResolutionPreset(resolutionPreset),
+          'requestedWidth': requestedPreviewSize?.width?.round(),
+          'requestedHeight': requestedPreviewSize?.height?.round(),
+          'persistentSession': persistentSession,
+          'persistentImageStream': persistentImageStream,
+          'keepOtherCamerasOpen': keepOtherCamerasOpen,
         },
       );
       _textureId = reply['textureId'];
@@ -236,7 +547,50 @@ class CameraController extends ValueNotifier<CameraValue> {
         value = value.copyWith(errorDescription: event['errorDescription']);
         break;
       case 'cameraClosing':
-        value = value.copyWith(isRecordingVideo: false);
+        value = value.copyWith(
+            isRecordingVideo: false, isRecordingPaused: false);
+        break;
+      case 'cameraSuspended':
+        value = value.copyWith(
+            isRecordingVideo: false,
+            isRecordingPaused: false,
+            isSuspended: true);
+        break;
+      case 'videoRecordingStopped':
+        value = value.copyWith(
+            isRecordingVideo: false, isRecordingPaused: false);
+        break;
+      case 'cameraResumed':
+        value = value.copyWith(isSuspended: false);
+        break;
+      case 'videoSegmentCompleted':
+        if (_onVideoSegmentCompleted != null) {
+          _onVideoSegmentCompleted(map['path']);
+        }
+        break;
+      case 'cameraMetric':
+        if (onMetric != null) {
+          onMetric(new CameraMetric.latency(
+            _parseCameraLatency(map['metric']),
+            new Duration(milliseconds: map['durationMs']),
+          ));
+        }
+        break;
+      case 'droppedFrames':
+        if (onMetric != null) {
+          onMetric(new CameraMetric.droppedFrames(
+            map['failedFrames'],
+            map['skippedFrames'],
+          ));
+        }
+        break;
+      case 'imageStreamStatistics':
+        if (_onImageStreamStatistics != null) {
+          _onImageStreamStatistics(new ImageStreamStatistics(
+            map['deliveredFrames'],
+            map['droppedFrames'],
+          ));
+        }
         break;
     }
   }
@@ -249,8 +603,17 @@ class CameraController extends ValueNotifier<CameraValue> {
   /// If a file already exists at the provided path an error will be thrown.
   /// The file can be read as this function returns.
   ///
+  /// If [thumbnailPath] is given, a JPEG thumbnail whose longest side is at
+  /// most [thumbnailSize] pixels is saved there as well, and its path is
+  /// returned. The thumbnail is generated natively, without decoding the
+  /// full-size picture. Thumbnails are currently only supported on Android.
+  ///
   /// Throws a [CameraException] if the capture fails.
-  Future<Null> takePicture(String path) async {
+  Future<String> takePicture(
+    String path, {
+    String thumbnailPath,
+    int thumbnailSize = 200,
+  }) async {
     if (!value.isInitialized || _isDisposed) {
       throw new CameraException(
         'Uninitialized CameraController.',
@@ -265,17 +628,109 @@ class CameraController extends ValueNotifier<CameraValue> {
     }
     try {
       value = value.copyWith(isTakingPicture: true);
-      await _channel.invokeMethod(
+      final Map<dynamic, dynamic> reply = await _channel.invokeMethod(
         'takePicture',
-        <String, dynamic>{'textureId': _textureId, 'path': path},
+        <String, dynamic>{
+          'textureId': _textureId,
+          'path': path,
+          'thumbnailPath': thumbnailPath,
+          'thumbnailSize': thumbnailSize,
+        },
+      );
+      value = value.copyWith(isTakingPicture: false);
+      return reply == null ? null : reply['thumbnailPath'];
+    } on PlatformException catch (e) {
+      value = value.copyWith(isTakingPicture: false);
+      throw new CameraException(e.code, e.message);
+    }
+  }
+
+  /// Captures [count] images in a single burst and saves them in [directory].
+  ///
+  /// The files are written while the remaining images of the burst are still
+  /// being captured. Completes with the paths of the saved files, in capture
+  /// order, once all of them can be read.
+  ///
+  /// Currently only supported on Android.
+  ///
+  /// Throws a [CameraException] if the capture fails.
+  Future<List<String>> takePictureBurst(int count, String directory) async {
+    if (!value.isInitialized || _isDisposed) {
+      throw new CameraException(
+        'Uninitialized CameraController.',
+        'takePictureBurst was called on uninitialized CameraController',
+      );
+    }
+    if (value.isTakingPicture) {
+      throw new CameraException(
+        'Previous capture has not returned yet.',
+        'takePictureBurst was called before the previous capture returned.',
+      );
+    }
+    try {
+      value = value.copyWith(isTakingPicture: true);
+      final List<dynamic> paths = await _channel.invokeMethod(
+        'takePictureBurst',
+        <String, dynamic>{
+          'textureId': _textureId,
+          'count': count,
+          'directory': directory,
+        },
       );
       value = value.copyWith(isTakingPicture: false);
+      return paths.cast<String>();
     } on PlatformException catch (e) {
       value = value.copyWith(isTakingPicture: false);
       throw new CameraException(e.code, e.message);
     }
   }
 
+  /// Sets the encoder settings of the following video recordings.
+  ///
+  /// Settings start from the device's [preset] when one is given, and from
+  /// the plugin defaults (1 Mbps, 27 fps, 16 kHz audio, H.264) otherwise. Any
+  /// other argument overrides the corresponding setting. Completes with the
+  /// settings that will be used.
+  ///
+  /// Currently only supported on Android. [VideoEncoder.hevc] requires
+  /// Android 7.0 or later.
+  ///
+  /// Throws a [CameraException] if a setting is not supported.
+  Future<RecordingProfile> setRecordingProfile({
+    RecordingPreset preset,
+    int videoBitRate,
+    int videoFrameRate,
+    int audioSamplingRate,
+    int audioBitRate,
+    VideoEncoder videoEncoder,
+  }) async {
+    if (!value.isInitialized || _isDisposed) {
+      throw new CameraException(
+        'Uninitialized CameraController',
+        'setRecordingProfile was called on uninitialized CameraController',
+      );
+    }
+    try {
+      final Map<dynamic, dynamic> reply = await _channel.invokeMethod(
+        'setRecordingProfile',
+        <String, dynamic>{
+          'textureId': _textureId,
+          'preset': preset == null ? null : _serializeRecordingPreset(preset),
+          'videoBitRate': videoBitRate,
+          'videoFrameRate': videoFrameRate,
+          'audioSamplingRate': audioSamplingRate,
+          'audioBitRate': audioBitRate,
+          'videoEncoder': videoEncoder == null
+              ? null
+              : _serializeVideoEncoder(videoEncoder),
+        },
+      );
+      return new RecordingProfile._fromPlatformData(reply);
+    } on PlatformException catch (e) {
+      throw new CameraException(e.code, e.message);
+    }
+  }
+
   /// Start a video recording and save the file to [path].
   ///
   /// A path can for example be obtained using
@@ -310,6 +765,92 @@ class CameraController extends ValueNotifier<CameraValue> {
     }
   }
 
+  /// Start a video recording split into files of [segmentDuration] in
+  /// [directory].
+  ///
+  /// [onSegmentCompleted] is called with the path of each file once it is
+  /// complete and can be read or uploaded, including the last one when
+  /// [stopVideoRecording] is called. On Android 8.0 and later the recording
+  /// switches files without a gap.
+  ///
+  /// Currently only supported on Android.
+  ///
+  /// Throws a [CameraException] if the recording fails to start.
+  Future<Null> startSegmentedVideoRecording(
+    String directory,
+    Duration segmentDuration, {
+    OnVideoSegmentCompleted onSegmentCompleted,
+  }) async {
+    if (!value.isInitialized || _isDisposed) {
+      throw new CameraException(
+        'Uninitialized CameraController',
+        'startSegmentedVideoRecording was called on uninitialized CameraController',
+      );
+    }
+    if (value.isRecordingVideo) {
+      throw new CameraException(
+        'A video recording is already started.',
+        'startSegmentedVideoRecording was called when a recording is already started.',
+      );
+    }
+    try {
+      _onVideoSegmentCompleted = onSegmentCompleted;
+      await _channel.invokeMethod(
+        'startSegmentedVideoRecording',
+        <String, dynamic>{
+          'textureId': _textureId,
+          'directory': directory,
+          'segmentDurationMs': segmentDuration.inMilliseconds,
+        },
+      );
+      value = value.copyWith(isRecordingVideo: true, isRecordingPaused: false);
+    } on PlatformException catch (e) {
+      throw new CameraException(e.code, e.message);
+    }
+  }
+
+  /// Pause the current video recording.
+  ///
+  /// Currently only supported on Android 7.0 or later.
+  Future<Null> pauseVideoRecording() async {
+    if (!value.isRecordingVideo) {
+      throw new CameraException(
+        'No video is recording',
+        'pauseVideoRecording was called when no video is recording.',
+      );
+    }
+    try {
+      await _channel.invokeMethod(
+        'pauseVideoRecording',
+        <String, dynamic>{'textureId': _textureId},
+      );
+      value = value.copyWith(isRecordingPaused: true);
+    } on PlatformException catch (e) {
+      throw new CameraException(e.code, e.message);
+    }
+  }
+
+  /// Resume the current, paused video recording.
+  ///
+  /// Currently only supported on Android 7.0 or later.
+  Future<Null> resumeVideoRecording() async {
+    if (!value.isRecordingVideo) {
+      throw new CameraException(
+        'No video is recording',
+        'resumeVideoRecording was called when no video is recording.',
+      );
+    }
+    try {
+      await _channel.invokeMethod(
+        'resumeVideoRecording',
+        <String, dynamic>{'textureId': _textureId},
+      );
+      value = value.copyWith(isRecordingPaused: false);
+    } on PlatformException catch (e) {
+      throw new CameraException(e.code, e.message);
+    }
+  }
+
   /// Stop recording.
   Future<Null> stopVideoRecording() async {
     if (!value.isInitialized || _isDisposed) {
@@ -325,7 +866,7 @@ class CameraController extends ValueNotifier<CameraValue> {
       );
     }
     try {
-      value = value.copyWith(isRecordingVideo: false);
+      value = value.copyWith(isRecordingVideo: false, isRecordingPaused: false);
       await _channel.invokeMethod(
         'stopVideoRecording',
         <String, dynamic>{'textureId': _textureId},
@@ -335,6 +876,116 @@ class CameraController extends ValueNotifier<CameraValue> {
     }
   }
 
+  /// Start streaming images from the camera.
+  ///
+  /// [onAvailable] is called with every frame delivered by the camera. The
+  /// preview keeps running while images are streamed.
+  ///
+  /// At most [maxFramesInFlight] frames are handed to [onAvailable] before
+  /// the earlier ones are processed, and no more than [targetFps] frames are
+  /// delivered per second when it is set. Frames exceeding these limits are
+  /// dropped on the native side, keeping the latest one.
+  /// [onStatistics] is called about once per second with the number of
+  /// delivered and dropped frames.
+  ///
+  /// When [cropRect] is given, only that region of the frames, in pixels of
+  /// [CameraValue.previewSize], is delivered. When [targetSize] is given,
+  /// frames are resampled to that size. Both are applied natively before the
+  /// frames are sent, and the planes of the resulting [CameraImage]s are
+  /// tightly packed, with chroma planes of half the width and height.
+  ///
+  /// Currently only supported on Android.
+  ///
+  /// Throws a [CameraException] if starting the stream fails.
+  Future<Null> startImageStream(
+    OnLatestImageAvailable onAvailable, {
+    int maxFramesInFlight = 2,
+    int targetFps,
+    OnImageStreamStatistics onStatistics,
+    Rect cropRect,
+    Size targetSize,
+  }) async {
+    if (!value.isInitialized || _isDisposed) {
+      throw new CameraException(
+        'Uninitialized CameraController',
+        'startImageStream was called on uninitialized CameraController.',
+      );
+    }
+    if (value.isStreamingImages) {
+      throw new CameraException(
+        'A camera has started streaming images.',
+        'startImageStream was called while a camera was streaming images.',
+      );
+    }
+    _imageStreamSubscription =
+        new EventChannel('flutter.io/cameraPlugin/imageStream$_textureId')
+            .receiveBroadcastStream()
+            .listen((dynamic imageData) async {
+      try {
+        await onAvailable(new CameraImage._fromPlatformData(imageData));
+      } finally {
+        if (!_isDisposed) {
+          await _channel.invokeMethod(
+            'imageStreamFrameProcessed',
+            <String, dynamic>{'textureId': _textureId},
+          );
+        }
+      }
+    });
+    _onImageStreamStatistics = onStatistics;
+    try {
+      await _channel.invokeMethod(
+        'startImageStream',
+        <String, dynamic>{
+          'textureId': _textureId,
+          'maxFramesInFlight': maxFramesInFlight,
+          'targetFps': targetFps,
+          'cropLeft': cropRect?.left?.round(),
+          'cropTop': cropRect?.top?.round(),
+          'cropWidth': cropRect?.width?.round(),
+          'cropHeight': cropRect?.height?.round(),
+          'targetWidth': targetSize?.width?.round(),
+          'targetHeight': targetSize?.height?.round(),
+        },
+      );
+      value = value.copyWith(isStreamingImages: true);
+    } on PlatformException catch (e) {
+      await _imageStreamSubscription.cancel();
+      _imageStreamSubscription = null;
+      throw new CameraException(e.code, e.message);
+    }
+  }
+
+  /// Stop streaming images from the camera.
+  ///
+  /// Throws a [CameraException] if stopping the stream fails.
+  Future<Null> stopImageStream() async {
+    if (!value.isInitialized || _isDisposed) {
+      throw new CameraException(
+        'Uninitialized CameraController',
+        'stopImageStream was called on uninitialized CameraController.',
+      );
+    }
+    if (!value.isStreamingImages) {
+      throw new CameraException(
+        'No camera is streaming images',
+        'stopImageStream was called when no camera is streaming images.',
+      );
+    }
+    try {
+      value = value.copyWith(isStreamingImages: false);
+      await _channel.invokeMethod(
+        'stopImageStream',
+        <String, dynamic>{'textureId': _textureId},
+      );
+    } on PlatformException catch (e) {
+      throw new CameraException(e.code, e.message);
+    }
+    await _imageStreamSubscription?.cancel();
+    _imageStreamSubscription = null;
+    _onImageStreamStatistics = null;
+  }
+
   /// Releases the resources of this camera.
   @override
   Future<Null> dispose() async {
@@ -352,6 +1003,7 @@ class CameraController extends ValueNotifier<CameraValue> {
           <String, dynamic>{'textureId': _textureId},
         );
         await _eventSubscription?.cancel();
+        await _imageStreamSubscription?.cancel();
       });
     }
   }
@@ -4,74 +4,167 @@
 
 package io.flutter.plugins.firebase.cloudfirestore;
 
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.SparseArray;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.android.gms.tasks.Task;
-import com.google.android.gms.tasks.TaskCompletionSource;
-import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.FirebaseApp;
-import com.google.firebase.firestore.Blob;
 import com.google.firebase.firestore.CollectionReference;
-import com.google.firebase.firestore.DocumentChange;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.EventListener;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.FirebaseFirestoreException;
-import com.google.firebase.firestore.GeoPoint;
+import com.google.firebase.firestore.FirebaseFirestoreSettings;
 import com.google.firebase.firestore.ListenerRegistration;
 import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QuerySnapshot;
 import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.Source;
 import com.google.firebase.firestore.Transaction;
 import com.google.firebase.firestore.WriteBatch;
+import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
 import io.flutter.plugin.common.MethodChannel.Result;
+import io.flutter.plugin.common.MethodCodec;
 import io.flutter.plugin.common.PluginRegistry;
-import io.flutter.plugin.common.StandardMessageCodec;
 import io.flutter.plugin.common.StandardMethodCodec;
-import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
-import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 public class CloudFirestorePlugin implements MethodCallHandler {
 
   public static final String TAG = "CloudFirestorePlugin";
+  private static final String CHANNEL_NAME = "plugins.flutter.io/cloud_firestore";
+  private static final int MAX_CURSORS = 64;
+  // The maximum number of writes in a single WriteBatch.
+  private static final int MAX_BATCH_SIZE = 500;
+  private static final int DEFAULT_MAX_CONCURRENT_BATCHES = 4;
+  // Write batches that Dart did not use for this long are considered abandoned.
+  private static final long BATCH_TTL_MS = TimeUnit.MINUTES.toMillis(10);
+  private static final String BATCH_EXPIRED = "The batch has expired.";
+  private static final MethodCodec METHOD_CODEC =
+      new StandardMethodCodec(FirestoreMessageCodec.INSTANCE);
   private final MethodChannel channel;
+  private final BinaryMessenger messenger;
+  // Snapshots are converted and encoded on this thread, in the order they are received, and only
+  // the encoded messages are posted to the platform thread.
+  private final ExecutorService serializationExecutor = Executors.newSingleThreadExecutor();
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
   // Handles are ints used as indexes into the sparse array of active observers
   private int nextListenerHandle = 0;
   private int nextBatchHandle = 0;
   private final SparseArray<EventObserver> observers = new SparseArray<>();
+  // The listeners shared by identical queries, only accessed on the platform thread.
+  private final Map<ListenerKey, EventObserver> sharedObservers = new HashMap<>();
   private final SparseArray<DocumentObserver> documentObservers = new SparseArray<>();
   private final SparseArray<ListenerRegistration> listenerRegistrations = new SparseArray<>();
-  private final SparseArray<WriteBatch> batches = new SparseArray<>();
-  private final SparseArray<Transaction> transactions = new SparseArray<>();
-  private final SparseArray<TaskCompletionSource> completionTasks = new SparseArray<>();
+  private final ExpiringHandleTable<WriteBatch> batches = new ExpiringHandleTable<>(BATCH_TTL_MS);
+  // The running attempt of each transaction, keyed by transaction id. Accessed from the platform
+  // thread and from the transaction threads.
+  private final SparseArray<TransactionAttempt> transactions = new SparseArray<>();
+
+  // The position after each page returned by Query#getDocumentsPage, keyed by cursor id. Only
+  // the most recently created cursors are kept, so that abandoned paginations do not leak.
+  private int nextCursorId = 0;
+  private final Map<Integer, PageCursor> cursors =
+      new LinkedHashMap<Integer, PageCursor>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, PageCursor> eldest) {
+          return size() > MAX_CURSORS;
+        }
+      };
 
   public static void registerWith(PluginRegistry.Registrar registrar) {
     final MethodChannel channel =
-        new MethodChannel(
-            registrar.messenger(),
-            "plugins.flutter.io/cloud_firestore",
-            new StandardMethodCodec(FirestoreMessageCodec.INSTANCE));
-    channel.setMethodCallHandler(new CloudFirestorePlugin(channel));
+        new MethodChannel(registrar.messenger(), CHANNEL_NAME, METHOD_CODEC);
+    channel.setMethodCallHandler(new CloudFirestorePlugin(channel, registrar.messenger()));
   }
 
-  private CloudFirestorePlugin(MethodChannel channel) {
+  private CloudFirestorePlugin(MethodChannel channel, BinaryMessenger messenger) {
     this.channel = channel;
+    this.messenger = messenger;
+  }
+
+  /**
+   * Sends a method call to Dart the same way {@link MethodChannel#invokeMethod(String, Object)}
+   * would, encoding it on the calling thread.
+   */
+  private void invokeMethodFromBackground(String method, Object arguments) {
+    final ByteBuffer message = METHOD_CODEC.encodeMethodCall(new MethodCall(method, arguments));
+    mainHandler.post(
+        new Runnable() {
+          @Override
+          public void run() {
+            messenger.send(CHANNEL_NAME, message);
+          }
+        });
+  }
+
+  private void errorFromBackground(
+      final Result result, final String errorCode, final String errorMessage) {
+    mainHandler.post(
+        new Runnable() {
+          @Override
+          public void run() {
+            result.error(errorCode, errorMessage, null);
+          }
+        });
+  }
+
+  /** Encodes {@code value} on the calling thread and replies with it on the platform thread. */
+  private void successFromBackground(final Result result, Object value) {
+    final Object encodedValue = FirestoreMessageCodec.INSTANCE.encode(value);
+    mainHandler.post(
+        new Runnable() {
+          @Override
+          public void run() {
+            result.success(encodedValue);
+          }
+        });
+  }
+
+  private static Map<String, Object> parseDocumentSnapshot(DocumentSnapshot documentSnapshot) {
+    return parseDocumentSnapshot(documentSnapshot, null);
+  }
+
+  private static Map<String, Object> parseDocumentSnapshot(
+      DocumentSnapshot documentSnapshot, @Nullable DocumentProjection projection) {
+    Map<String, Object> snapshotMap = new HashMap<>();
+    snapshotMap.put("path", documentSnapshot.getReference().getPath());
+    if (documentSnapshot.exists()) {
+      snapshotMap.put("data", DocumentProjection.getData(documentSnapshot, projection));
+    } else {
+      snapshotMap.put("data", null);
+    }
+    return snapshotMap;
+  }
+
+  private static Map<String, Object> parseException(
+      FirebaseFirestoreException e, boolean willRetry) {
+    Map<String, Object> exceptionMap = new HashMap<>();
+    exceptionMap.put("code", e.getCode().name());
+    exceptionMap.put("message", e.getMessage());
+    exceptionMap.put("willRetry", willRetry);
+    return exceptionMap;
   }
 
   private FirebaseFirestore getFirestore(Map<String, Object> arguments) {
@@ -79,6 +172,22 @@ public class CloudFirestorePlugin implements MethodCallHandler {
     return FirebaseFirestore.getInstance(FirebaseApp.getInstance(appName));
   }
 
+  /** Returns the source of a read, which defaults to the server with a fallback to the cache. */
+  private static Source getSource(Map<String, Object> arguments) {
+    String source = (String) arguments.get("source");
+    if (source == null) {
+      return Source.DEFAULT;
+    }
+    switch (source) {
+      case "server":
+        return Source.SERVER;
+      case "cache":
+        return Source.CACHE;
+      default:
+        return Source.DEFAULT;
+    }
+  }
+
   private CollectionReference getCollectionReference(Map<String, Object> arguments) {
     String path = (String) arguments.get("path");
     return getFirestore(arguments).collection(path);
@@ -89,47 +198,11 @@ public class CloudFirestorePlugin implements MethodCallHandler {
     return getFirestore(arguments).document(path);
   }
 
-  private Map<String, Object> parseQuerySnapshot(QuerySnapshot querySnapshot) {
-    if (querySnapshot == null) return new HashMap<>();
-    Map<String, Object> data = new HashMap<>();
-    List<String> paths = new ArrayList<>();
-    List<Map<String, Object>> documents = new ArrayList<>();
-    for (DocumentSnapshot document : querySnapshot.getDocuments()) {
-      paths.add(document.getReference().getPath());
-      documents.add(document.getData());
-    }
-    data.put("paths", paths);
-    data.put("documents", documents);
-
-    List<Map<String, Object>> documentChanges = new ArrayList<>();
-    for (DocumentChange documentChange : querySnapshot.getDocumentChanges()) {
-      Map<String, Object> change = new HashMap<>();
-      String type = null;
-      switch (documentChange.getType()) {
-        case ADDED:
-          type = "DocumentChangeType.added";
-          break;
-        case MODIFIED:
-          type = "DocumentChangeType.modified";
-          break;
-        case REMOVED:
-          type = "DocumentChangeType.removed";
-          break;
-      }
-      change.put("type", type);
-      change.put("oldIndex", documentChange.getOldIndex());
-      change.put("newIndex", documentChange.getNewIndex());
-      change.put("document", documentChange.getDocument().getData());
-      change.put("path", documentChange.getDocument().getReference().getPath());
-      documentChanges.add(change);
+  @Nullable
+  private TransactionAttempt getTransactionAttempt(Map<String, Object> arguments) {
+    synchronized (transactions) {
+      return transactions.get((Integer) arguments.get("transactionId"));
     }
-    data.put("documentChanges", documentChanges);
-
-    return data;
-  }
-
-  private Transaction getTransaction(Map<String, Object> arguments) {
-    return transactions.get((Integer) arguments.get("transactionId"));
   }
 
   private Query getQuery(Map<String, Object> arguments) {
@@ -185,52 +258,562 @@ public class CloudFirestorePlugin implements MethodCallHandler {
     return query;
   }
 
+  /**
+   * Sends the snapshots of a document to Dart.
+   *
+   * <p>Errors are sent to Dart too. When {@code resubscribe} is set and the error may be
+   * transient, the same document reference is listened to again after a {@link ListenerBackoff}
+   * delay.
+   */
   private class DocumentObserver implements EventListener<DocumentSnapshot> {
     private int handle;
+    private final DocumentReference documentReference;
+    @Nullable private final DocumentProjection projection;
+    private final boolean resubscribe;
+    // Only accessed on the serialization thread.
+    private final ListenerBackoff backoff = new ListenerBackoff();
 
-    DocumentObserver(int handle) {
+    DocumentObserver(
+        int handle,
+        DocumentReference documentReference,
+        @Nullable DocumentProjection projection,
+        boolean resubscribe) {
       this.handle = handle;
+      this.documentReference = documentReference;
+      this.projection = projection;
+      this.resubscribe = resubscribe;
+    }
+
+    /** Registers the native listener. Only called on the platform thread. */
+    void listen() {
+      listenerRegistrations.put(
+          handle, documentReference.addSnapshotListener(serializationExecutor, this));
     }
 
     @Override
     public void onEvent(DocumentSnapshot documentSnapshot, FirebaseFirestoreException e) {
       if (e != null) {
-        // TODO: send error
-        System.out.println(e);
+        boolean willRetry = resubscribe && ListenerBackoff.isRetryable(e.getCode());
+        Map<String, Object> arguments = parseException(e, willRetry);
+        arguments.put("handle", handle);
+        invokeMethodFromBackground("DocumentSnapshotError", arguments);
+        if (willRetry) {
+          mainHandler.postDelayed(
+              new Runnable() {
+                @Override
+                public void run() {
+                  // Unless the listener was removed in the meantime.
+                  if (listenerRegistrations.get(handle) != null) {
+                    listen();
+                  }
+                }
+              },
+              backoff.nextDelayMs());
+        }
         return;
       }
-      Map<String, Object> arguments = new HashMap<>();
+      backoff.reset();
+      Map<String, Object> arguments = parseDocumentSnapshot(documentSnapshot, projection);
       arguments.put("handle", handle);
-      if (documentSnapshot.exists()) {
-        arguments.put("data", documentSnapshot.getData());
-        arguments.put("path", documentSnapshot.getReference().getPath());
-      } else {
-        arguments.put("data", null);
-        arguments.put("path", documentSnapshot.getReference().getPath());
+      invokeMethodFromBackground("DocumentSnapshot", arguments);
+    }
+  }
+
+  /** Where the next page of a paginated query starts. */
+  private static final class PageCursor {
+    final DocumentSnapshot lastDocument;
+    // The number of documents left within the limit of the query, or null if it has no limit.
+    @Nullable final Long remaining;
+
+    PageCursor(DocumentSnapshot lastDocument, @Nullable Long remaining) {
+      this.lastDocument = lastDocument;
+      this.remaining = remaining;
+    }
+  }
+
+  /** Identifies the listeners that can share the snapshots of a single native listener. */
+  private static final class ListenerKey {
+    // Queries are equal when they target the same documents with the same constraints.
+    private final Query query;
+    private final boolean deltaOnly;
+    @Nullable private final DocumentProjection projection;
+    private final boolean resubscribe;
+
+    ListenerKey(
+        Query query,
+        boolean deltaOnly,
+        @Nullable DocumentProjection projection,
+        boolean resubscribe) {
+      this.query = query;
+      this.deltaOnly = deltaOnly;
+      this.projection = projection;
+      this.resubscribe = resubscribe;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
       }
-      channel.invokeMethod("DocumentSnapshot", arguments);
+      if (!(o instanceof ListenerKey)) {
+        return false;
+      }
+      ListenerKey that = (ListenerKey) o;
+      return deltaOnly == that.deltaOnly
+          && resubscribe == that.resubscribe
+          && query.equals(that.query)
+          && (projection == null ? that.projection == null : projection.equals(that.projection));
+    }
+
+    @Override
+    public int hashCode() {
+      int result = 31 * query.hashCode() + (deltaOnly ? 1 : 0);
+      result = 31 * result + (resubscribe ? 1 : 0);
+      return 31 * result + (projection == null ? 0 : projection.hashCode());
     }
   }
 
+  /**
+   * A native query listener shared by every Dart listener of the same query.
+   *
+   * <p>Each snapshot is encoded once, with the list of the handles it is for, and Dart fans it out
+   * to their streams. A handle that joins a running listener first receives the last snapshot on
+   * its own.
+   *
+   * <p>Errors are sent to all the handles. When {@code resubscribe} is set and the error may be
+   * transient, the same query is listened to again after a {@link ListenerBackoff} delay, once for
+   * all the handles.
+   */
   private class EventObserver implements EventListener<QuerySnapshot> {
-    private int handle;
+    private final ListenerKey key;
+    // Whether only the changes of snapshots after the first one are sent.
+    private final boolean deltaOnly;
+    // Only accessed on the platform thread.
+    private ListenerRegistration registration;
+    private int handleCount;
+    private boolean removed;
+    // Only accessed on the serialization thread.
+    private final List<Integer> handles = new ArrayList<>();
+    private QuerySnapshot lastSnapshot;
+    // The error that ended the listener, if it will not resubscribe.
+    private FirebaseFirestoreException terminalError;
+    private final ListenerBackoff backoff = new ListenerBackoff();
 
-    EventObserver(int handle) {
-      this.handle = handle;
+    EventObserver(ListenerKey key) {
+      this.key = key;
+      this.deltaOnly = key.deltaOnly;
+    }
+
+    void addHandle(final int handle) {
+      handleCount++;
+      serializationExecutor.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              handles.add(handle);
+              if (terminalError != null) {
+                // The handle joined before the ended listener was unshared.
+                sendError(terminalError, Collections.singletonList(handle), false);
+              } else if (lastSnapshot != null) {
+                // The changes of the last snapshot are relative to one this handle never saw.
+                invokeMethodFromBackground(
+                    "QuerySnapshot",
+                    FirestoreMessageCodec.EncodedQuerySnapshot.asFirstSnapshot(
+                        lastSnapshot,
+                        snapshotExtras(Collections.singletonList(handle), false),
+                        key.projection));
+              }
+            }
+          });
+      if (registration == null) {
+        listen();
+      }
+    }
+
+    // Listens to the query of the key, so that resubscribing reuses the query that was built.
+    private void listen() {
+      registration = key.query.addSnapshotListener(serializationExecutor, this);
+    }
+
+    void removeHandle(final int handle) {
+      if (--handleCount == 0) {
+        removed = true;
+        registration.remove();
+        unshare();
+      }
+      serializationExecutor.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              handles.remove(Integer.valueOf(handle));
+            }
+          });
     }
 
     @Override
     public void onEvent(QuerySnapshot querySnapshot, FirebaseFirestoreException e) {
       if (e != null) {
-        // TODO: send error
-        System.out.println(e);
+        onError(e);
         return;
       }
 
-      Map<String, Object> arguments = parseQuerySnapshot(querySnapshot);
-      arguments.put("handle", handle);
+      backoff.reset();
+      if (!handles.isEmpty()) {
+        send(querySnapshot, new ArrayList<>(handles), deltaOnly && lastSnapshot != null);
+      }
+      lastSnapshot = querySnapshot;
+    }
 
-      channel.invokeMethod("QuerySnapshot", arguments);
+    /**
+     * Stops new listeners of the query from joining this observer. Only called on the platform
+     * thread.
+     */
+    private void unshare() {
+      // An observer that ended with an error may already have been replaced.
+      if (sharedObservers.get(key) == this) {
+        sharedObservers.remove(key);
+      }
+    }
+
+    private void onError(FirebaseFirestoreException e) {
+      boolean willRetry = key.resubscribe && ListenerBackoff.isRetryable(e.getCode());
+      if (!handles.isEmpty()) {
+        sendError(e, new ArrayList<>(handles), willRetry);
+      }
+      if (!willRetry) {
+        // Firestore has ended the listener, so the next listener of the query starts a new one.
+        terminalError = e;
+        mainHandler.post(
+            new Runnable() {
+              @Override
+              public void run() {
+                removed = true;
+                unshare();
+              }
+            });
+      } else {
+        // The new listener starts with a full snapshot.
+        lastSnapshot = null;
+        mainHandler.postDelayed(
+            new Runnable() {
+              @Override
+              public void run() {
+                if (!removed) {
+                  listen();
+                }
+              }
+            },
+            backoff.nextDelayMs());
+      }
+    }
+
+    private void sendError(
+        FirebaseFirestoreException e, List<Integer> handles, boolean willRetry) {
+      Map<String, Object> arguments = parseException(e, willRetry);
+      arguments.put("handles", handles);
+      invokeMethodFromBackground("QuerySnapshotError", arguments);
+    }
+
+    private void send(QuerySnapshot querySnapshot, List<Integer> handles, boolean changesOnly) {
+      invokeMethodFromBackground(
+          "QuerySnapshot",
+          new FirestoreMessageCodec.EncodedQuerySnapshot(
+              querySnapshot, snapshotExtras(handles, changesOnly), changesOnly, key.projection));
+    }
+
+    private Map<String, Object> snapshotExtras(List<Integer> handles, boolean changesOnly) {
+      Map<String, Object> extras = new HashMap<>();
+      extras.put("handles", handles);
+      if (deltaOnly) {
+        extras.put("isDelta", changesOnly);
+      }
+      return extras;
+    }
+  }
+
+  /**
+   * Asks Dart to run the handler of a transaction. Dart replies with the result of the handler and
+   * the writes it made, which are applied to the transaction in one go.
+   */
+  private void startDartTransaction(
+      final Map<String, Object> arguments, final TransactionAttempt attempt) {
+    mainHandler.post(
+        new Runnable() {
+          @Override
+          public void run() {
+            channel.invokeMethod(
+                "DoTransaction",
+                arguments,
+                new Result() {
+                  @Override
+                  public void success(Object reply) {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> replyMap = (Map<String, Object>) reply;
+                    @SuppressWarnings("unchecked")
+                    List<Map<String, Object>> writes =
+                        (List<Map<String, Object>>) replyMap.get("writes");
+                    attempt.complete(replyMap.get("result"), writes);
+                  }
+
+                  @Override
+                  public void error(String errorCode, String errorMessage, Object errorDetails) {
+                    attempt.fail("Do transaction failed: " + errorMessage);
+                  }
+
+                  @Override
+                  public void notImplemented() {
+                    attempt.fail("DoTransaction not implemented");
+                  }
+                });
+          }
+        });
+  }
+
+  /**
+   * A single run of the function of a transaction.
+   *
+   * <p>Firestore calls the function on one of its transaction threads and expects the reads and
+   * writes to be made before it returns. Instead of blocking that thread on a task while every
+   * operation spawns a thread of its own, the operations requested by Dart are queued and
+   * executed on the transaction thread itself, which then returns as soon as Dart completes.
+   */
+  private static final class TransactionAttempt {
+    final FirebaseFirestore firestore;
+    final Transaction transaction;
+    private final BlockingQueue<Runnable> operations = new LinkedBlockingQueue<>();
+    private volatile boolean closed;
+    // Only accessed on the transaction thread, by operations that run before the attempt closes.
+    private boolean completed;
+    private Object result;
+    private String error;
+
+    TransactionAttempt(FirebaseFirestore firestore, Transaction transaction) {
+      this.firestore = firestore;
+      this.transaction = transaction;
+    }
+
+    boolean isClosed() {
+      return closed;
+    }
+
+    /**
+     * Runs {@code operation} on the transaction thread. Once the attempt is closed, operations
+     * run on the calling thread instead, and must check {@link #isClosed()}.
+     */
+    void execute(Runnable operation) {
+      synchronized (this) {
+        if (!closed) {
+          operations.add(operation);
+          return;
+        }
+      }
+      operation.run();
+    }
+
+    void complete(final Object result, @Nullable final List<Map<String, Object>> writes) {
+      execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              if (closed) {
+                return;
+              }
+              if (writes != null) {
+                for (Map<String, Object> write : writes) {
+                  applyWrite(write);
+                }
+              }
+              completed = true;
+              TransactionAttempt.this.result = result;
+            }
+          });
+    }
+
+    void fail(final String error) {
+      execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              if (closed) {
+                return;
+              }
+              completed = true;
+              TransactionAttempt.this.error = error;
+            }
+          });
+    }
+
+    /**
+     * Executes the queued operations until Dart completes the attempt, and returns the result of
+     * the Dart handler.
+     */
+    Object run(long timeoutMs) throws FirebaseFirestoreException {
+      long deadline = SystemClock.elapsedRealtime() + timeoutMs;
+      try {
+        while (!completed) {
+          long remaining = deadline - SystemClock.elapsedRealtime();
+          Runnable operation =
+              remaining > 0 ? operations.poll(remaining, TimeUnit.MILLISECONDS) : null;
+          if (operation == null) {
+            throw new FirebaseFirestoreException(
+                "Transaction timed out.", FirebaseFirestoreException.Code.DEADLINE_EXCEEDED);
+          }
+          operation.run();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new FirebaseFirestoreException(
+            "Transaction interrupted.", FirebaseFirestoreException.Code.ABORTED);
+      } finally {
+        close();
+      }
+      if (error != null) {
+        throw new FirebaseFirestoreException(error, FirebaseFirestoreException.Code.ABORTED);
+      }
+      return result;
+    }
+
+    // Operations queued after the attempt ended see that it is closed and only reply.
+    private void close() {
+      synchronized (this) {
+        closed = true;
+      }
+      Runnable operation;
+      while ((operation = operations.poll()) != null) {
+        operation.run();
+      }
+    }
+
+    private void applyWrite(Map<String, Object> write) {
+      DocumentReference reference = firestore.document((String) write.get("path"));
+      String type = (String) write.get("type");
+      switch (type) {
+        case "set":
+          transaction.set(reference, write.get("data"));
+          break;
+        case "update":
+          @SuppressWarnings("unchecked")
+          Map<String, Object> data = (Map<String, Object>) write.get("data");
+          transaction.update(reference, data);
+          break;
+        case "delete":
+          transaction.delete(reference);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown write type: " + type);
+      }
+    }
+  }
+
+  /**
+   * Commits a list of writes as consecutive {@link WriteBatch}es of at most {@link
+   * #MAX_BATCH_SIZE} writes, with at most {@code maxConcurrentBatches} commits in flight.
+   *
+   * <p>Each batch is atomic, but the bulk write as a whole is not: the result lists, for every
+   * batch, the index of its first write, its number of writes and its error, if any. Only runs on
+   * the platform thread.
+   */
+  private class BulkWrite {
+    private final FirebaseFirestore firestore;
+    private final List<Map<String, Object>> operations;
+    private final int maxConcurrentBatches;
+    private final Result result;
+    private final List<Map<String, Object>> batchResults = new ArrayList<>();
+    private int nextOperation;
+    private int pendingBatches;
+
+    BulkWrite(
+        FirebaseFirestore firestore,
+        List<Map<String, Object>> operations,
+        int maxConcurrentBatches,
+        Result result) {
+      this.firestore = firestore;
+      this.operations = operations;
+      this.maxConcurrentBatches = Math.max(1, maxConcurrentBatches);
+      this.result = result;
+    }
+
+    void start() {
+      if (operations.isEmpty()) {
+        result.success(batchResults);
+        return;
+      }
+      while (pendingBatches < maxConcurrentBatches && nextOperation < operations.size()) {
+        commitNextBatch();
+      }
+    }
+
+    private void commitNextBatch() {
+      final int start = nextOperation;
+      final int end = Math.min(start + MAX_BATCH_SIZE, operations.size());
+      nextOperation = end;
+      pendingBatches++;
+
+      WriteBatch batch = firestore.batch();
+      try {
+        for (int i = start; i < end; i++) {
+          addOperation(batch, operations.get(i));
+        }
+      } catch (IllegalArgumentException e) {
+        onBatchComplete(start, end, e.getMessage());
+        return;
+      }
+      batch
+          .commit()
+          .addOnSuccessListener(
+              new OnSuccessListener<Void>() {
+                @Override
+                public void onSuccess(Void ignored) {
+                  onBatchComplete(start, end, null);
+                }
+              })
+          .addOnFailureListener(
+              new OnFailureListener() {
+                @Override
+                public void onFailure(@NonNull Exception e) {
+                  onBatchComplete(start, end, e.getMessage());
+                }
+              });
+    }
+
+    private void addOperation(WriteBatch batch, Map<String, Object> operation) {
+      DocumentReference reference = firestore.document((String) operation.get("path"));
+      String type = (String) operation.get("type");
+      switch (type) {
+        case "set":
+          Boolean merge = (Boolean) operation.get("merge");
+          if (merge != null && merge) {
+            batch.set(reference, operation.get("data"), SetOptions.merge());
+          } else {
+            batch.set(reference, operation.get("data"));
+          }
+          break;
+        case "update":
+          @SuppressWarnings("unchecked")
+          Map<String, Object> data = (Map<String, Object>) operation.get("data");
+          batch.update(reference, data);
+          break;
+        case "delete":
+          batch.delete(reference);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown write type: " + type);
+      }
+    }
+
+    private void onBatchComplete(int start, int end, @Nullable String error) {
+      pendingBatches--;
+      Map<String, Object> batchResult = new HashMap<>();
+      batchResult.put("start", start);
+      batchResult.put("count", end - start);
+      batchResult.put("error", error);
+      batchResults.add(batchResult);
+
+      if (nextOperation < operations.size()) {
+        commitNextBatch();
+      } else if (pendingBatches == 0) {
+        result.success(batchResults);
+      }
     }
   }
 
@@ -256,137 +839,136 @@ public class CloudFirestorePlugin implements MethodCallHandler {
     switch (call.method) {
       case "Firestore#runTransaction":
         {
-          final TaskCompletionSource<Map<String, Object>> transactionTCS =
-              new TaskCompletionSource<>();
-          final Task<Map<String, Object>> transactionTCSTask = transactionTCS.getTask();
-
           final Map<String, Object> arguments = call.arguments();
-          getFirestore(arguments)
+          final int transactionId = (Integer) arguments.get("transactionId");
+          final long timeout = ((Number) arguments.get("transactionTimeout")).longValue();
+          final FirebaseFirestore firestore = getFirestore(arguments);
+          firestore
               .runTransaction(
-                  new Transaction.Function<Void>() {
+                  new Transaction.Function<Object>() {
                     @Nullable
                     @Override
-                    public Void apply(@NonNull Transaction transaction)
+                    public Object apply(@NonNull Transaction transaction)
                         throws FirebaseFirestoreException {
-                      // Store transaction.
-                      int transactionId = (Integer) arguments.get("transactionId");
-                      transactions.append(transactionId, transaction);
-                      completionTasks.append(transactionId, transactionTCS);
-
-                      // Start operations on Dart side.
-                      channel.invokeMethod(
-                          "DoTransaction",
-                          arguments,
-                          new Result() {
-                            @Override
-                            public void success(Object doTransactionResult) {
-                              transactionTCS.setResult((Map<String, Object>) doTransactionResult);
-                            }
-
-                            @Override
-                            public void error(
-                                String errorCode, String errorMessage, Object errorDetails) {
-                              // result.error(errorCode, errorMessage, errorDetails);
-                              transactionTCS.setException(new Exception("Do transaction failed."));
-                            }
-
-                            @Override
-                            public void notImplemented() {
-                              // result.error("DoTransaction not implemented", null, null);
-                              transactionTCS.setException(
-                                  new Exception("DoTransaction not implemented"));
-                            }
-                          });
-
-                      // Wait till transaction is complete.
+                      // Firestore retries the function when the documents it read have changed,
+                      // so the Dart handler runs once per attempt.
+                      TransactionAttempt attempt = new TransactionAttempt(firestore, transaction);
+                      synchronized (transactions) {
+                        transactions.put(transactionId, attempt);
+                      }
                       try {
-                        String timeoutKey = "transactionTimeout";
-                        long timeout = ((Number) arguments.get(timeoutKey)).longValue();
-                        Map<String, Object> transactionResult =
-                            Tasks.await(transactionTCSTask, timeout, TimeUnit.MILLISECONDS);
-
-                        // Once transaction completes return the result to the Dart side.
-                        result.success(transactionResult);
-                      } catch (Exception e) {
-                        result.error("Error performing transaction", e.getMessage(), null);
+                        startDartTransaction(arguments, attempt);
+                        return attempt.run(timeout);
+                      } finally {
+                        synchronized (transactions) {
+                          if (transactions.get(transactionId) == attempt) {
+                            transactions.remove(transactionId);
+                          }
+                        }
                       }
-                      return null;
+                    }
+                  })
+              .addOnSuccessListener(
+                  new OnSuccessListener<Object>() {
+                    @Override
+                    public void onSuccess(Object transactionResult) {
+                      result.success(transactionResult);
+                    }
+                  })
+              .addOnFailureListener(
+                  new OnFailureListener() {
+                    @Override
+                    public void onFailure(@NonNull Exception e) {
+                      result.error("Error performing transaction", e.getMessage(), null);
                     }
                   });
           break;
         }
       case "Transaction#get":
         {
-          final Map<String, Object> arguments = call.arguments();
-          final Transaction transaction = getTransaction(arguments);
-          new AsyncTask<Void, Void, Void>() {
-            @Override
-            protected Void doInBackground(Void... voids) {
-              try {
-                DocumentSnapshot documentSnapshot =
-                    transaction.get(getDocumentReference(arguments));
-                Map<String, Object> snapshotMap = new HashMap<>();
-                snapshotMap.put("path", documentSnapshot.getReference().getPath());
-                if (documentSnapshot.exists()) {
-                  snapshotMap.put("data", documentSnapshot.getData());
-                } else {
-                  snapshotMap.put("data", null);
+          Map<String, Object> arguments = call.arguments();
+          final TransactionAttempt attempt = getTransactionAttempt(arguments);
+          if (attempt == null) {
+            result.error("Error performing Transaction#get", "The transaction has ended.", null);
+            break;
+          }
+          final DocumentReference documentReference = getDocumentReference(arguments);
+          attempt.execute(
+              new Runnable() {
+                @Override
+                public void run() {
+                  if (attempt.isClosed()) {
+                    errorFromBackground(
+                        result, "Error performing Transaction#get", "The transaction has ended.");
+                    return;
+                  }
+                  try {
+                    DocumentSnapshot documentSnapshot = attempt.transaction.get(documentReference);
+                    successFromBackground(result, parseDocumentSnapshot(documentSnapshot));
+                  } catch (FirebaseFirestoreException e) {
+                    errorFromBackground(result, "Error performing Transaction#get", e.getMessage());
+                  }
                 }
-                result.success(snapshotMap);
-              } catch (FirebaseFirestoreException e) {
-                result.error("Error performing Transaction#get", e.getMessage(), null);
-              }
-              return null;
-            }
-          }.execute();
+              });
           break;
         }
-      case "Transaction#update":
+      case "Firestore#debugHandleCounts":
         {
-          final Map<String, Object> arguments = call.arguments();
-          final Transaction transaction = getTransaction(arguments);
-          new AsyncTask<Void, Void, Void>() {
-            @Override
-            protected Void doInBackground(Void... voids) {
-              Map<String, Object> data = (Map<String, Object>) arguments.get("data");
-              try {
-                transaction.update(getDocumentReference(arguments), data);
-                result.success(null);
-              } catch (IllegalStateException e) {
-                result.error("Error performing Transaction#update", e.getMessage(), null);
-              }
-              return null;
-            }
-          }.execute();
+          Map<String, Object> counts = new HashMap<>();
+          counts.put("queryListeners", observers.size());
+          counts.put("sharedQueryListeners", sharedObservers.size());
+          counts.put("documentListeners", documentObservers.size());
+          counts.put("listenerRegistrations", listenerRegistrations.size());
+          counts.put("batches", batches.size());
+          synchronized (transactions) {
+            counts.put("transactions", transactions.size());
+          }
+          synchronized (cursors) {
+            counts.put("cursors", cursors.size());
+          }
+          result.success(counts);
           break;
         }
-      case "Transaction#set":
+      case "Firestore#settings":
         {
-          final Map<String, Object> arguments = call.arguments();
-          final Transaction transaction = getTransaction(arguments);
-          new AsyncTask<Void, Void, Void>() {
-            @Override
-            protected Void doInBackground(Void... voids) {
-              Map<String, Object> data = (Map<String, Object>) arguments.get("data");
-              transaction.set(getDocumentReference(arguments), data);
-              result.success(null);
-              return null;
+          Map<String, Object> arguments = call.arguments();
+          FirebaseFirestore firestore = getFirestore(arguments);
+          // Settings that are not passed keep their current value.
+          FirebaseFirestoreSettings.Builder builder =
+              new FirebaseFirestoreSettings.Builder(firestore.getFirestoreSettings());
+          Boolean persistenceEnabled = (Boolean) arguments.get("persistenceEnabled");
+          if (persistenceEnabled != null) {
+            builder.setPersistenceEnabled(persistenceEnabled);
+          }
+          Number cacheSizeBytes = (Number) arguments.get("cacheSizeBytes");
+          try {
+            if (cacheSizeBytes != null) {
+              builder.setCacheSizeBytes(cacheSizeBytes.longValue());
             }
-          }.execute();
+            // Throws if the instance has already been used.
+            firestore.setFirestoreSettings(builder.build());
+          } catch (IllegalArgumentException | IllegalStateException e) {
+            result.error("Error performing settings", e.getMessage(), null);
+            break;
+          }
+          result.success(null);
           break;
         }
-      case "Transaction#delete":
+      case "Firestore#bulkWrite":
         {
-          final Map<String, Object> arguments = call.arguments();
-          final Transaction transaction = getTransaction(arguments);
-          new AsyncTask<Void, Void, Void>() {
-            @Override
-            protected Void doInBackground(Void... voids) {
-              transaction.delete(getDocumentReference(arguments));
-              result.success(null);
-              return null;
-            }
-          }.execute();
+          Map<String, Object> arguments = call.arguments();
+          @SuppressWarnings("unchecked")
+          List<Map<String, Object>> operations =
+              (List<Map<String, Object>>) arguments.get("operations");
+          Integer maxConcurrentBatches = (Integer) arguments.get("maxConcurrentBatches");
+          new BulkWrite(
+                  getFirestore(arguments),
+                  operations,
+                  maxConcurrentBatches != null
+                      ? maxConcurrentBatches
+                      : DEFAULT_MAX_CONCURRENT_BATCHES,
+                  result)
+              .start();
           break;
         }
       case "WriteBatch#create":
@@ -406,6 +988,10 @@ public class CloudFirestorePlugin implements MethodCallHandler {
           @SuppressWarnings("unchecked")
           Map<String, Object> options = (Map<String, Object>) arguments.get("options");
           WriteBatch batch = batches.get(handle);
+          if (batch == null) {
+            result.error("Error performing WriteBatch#setData", BATCH_EXPIRED, null);
+            break;
+          }
           if (options != null && (Boolean) options.get("merge")) {
             batch.set(reference, arguments.get("data"), SetOptions.merge());
           } else {
@@ -422,6 +1008,10 @@ public class CloudFirestorePlugin implements MethodCallHandler {
           @SuppressWarnings("unchecked")
           Map<String, Object> data = (Map<String, Object>) arguments.get("data");
           WriteBatch batch = batches.get(handle);
+          if (batch == null) {
+            result.error("Error performing WriteBatch#updateData", BATCH_EXPIRED, null);
+            break;
+          }
           batch.update(reference, data);
           result.success(null);
           break;
@@ -432,6 +1022,10 @@ public class CloudFirestorePlugin implements MethodCallHandler {
           int handle = (Integer) arguments.get("handle");
           DocumentReference reference = getDocumentReference(arguments);
           WriteBatch batch = batches.get(handle);
+          if (batch == null) {
+            result.error("Error performing WriteBatch#delete", BATCH_EXPIRED, null);
+            break;
+          }
           batch.delete(reference);
           result.success(null);
           break;
@@ -441,8 +1035,12 @@ public class CloudFirestorePlugin implements MethodCallHandler {
           Map<String, Object> arguments = call.arguments();
           int handle = (Integer) arguments.get("handle");
           WriteBatch batch = batches.get(handle);
+          if (batch == null) {
+            result.error("Error performing commit", BATCH_EXPIRED, null);
+            break;
+          }
           Task<Void> task = batch.commit();
-          batches.delete(handle);
+          batches.remove(handle);
           addDefaultListeners("commit", task, result);
           break;
         }
@@ -450,9 +1048,21 @@ public class CloudFirestorePlugin implements MethodCallHandler {
         {
           Map<String, Object> arguments = call.arguments();
           int handle = nextListenerHandle++;
-          EventObserver observer = new EventObserver(handle);
+          Boolean deltaOnly = (Boolean) arguments.get("deltaOnly");
+          Boolean resubscribe = (Boolean) arguments.get("resubscribeOnError");
+          ListenerKey key =
+              new ListenerKey(
+                  getQuery(arguments),
+                  deltaOnly != null && deltaOnly,
+                  DocumentProjection.fromArguments(arguments),
+                  resubscribe != null && resubscribe);
+          EventObserver observer = sharedObservers.get(key);
+          if (observer == null) {
+            observer = new EventObserver(key);
+            sharedObservers.put(key, observer);
+          }
+          observer.addHandle(handle);
           observers.put(handle, observer);
-          listenerRegistrations.put(handle, getQuery(arguments).addSnapshotListener(observer));
           result.success(handle);
           break;
         }
@@ -460,10 +1070,15 @@ public class CloudFirestorePlugin implements MethodCallHandler {
         {
           Map<String, Object> arguments = call.arguments();
           int handle = nextListenerHandle++;
-          DocumentObserver observer = new DocumentObserver(handle);
+          Boolean resubscribe = (Boolean) arguments.get("resubscribeOnError");
+          DocumentObserver observer =
+              new DocumentObserver(
+                  handle,
+                  getDocumentReference(arguments),
+                  DocumentProjection.fromArguments(arguments),
+                  resubscribe != null && resubscribe);
           documentObservers.put(handle, observer);
-          listenerRegistrations.put(
-              handle, getDocumentReference(arguments).addSnapshotListener(observer));
+          observer.listen();
           result.success(handle);
           break;
         }
@@ -471,22 +1086,36 @@ public class CloudFirestorePlugin implements MethodCallHandler {
         {
           Map<String, Object> arguments = call.arguments();
           int handle = (Integer) arguments.get("handle");
-          listenerRegistrations.get(handle).remove();
-          listenerRegistrations.remove(handle);
-          observers.remove(handle);
+          EventObserver observer = observers.get(handle);
+          if (observer != null) {
+            observer.removeHandle(handle);
+            observers.remove(handle);
+          } else {
+            listenerRegistrations.get(handle).remove();
+            listenerRegistrations.remove(handle);
+            documentObservers.remove(handle);
+          }
           result.success(null);
           break;
         }
       case "Query#getDocuments":
         {
           Map<String, Object> arguments = call.arguments();
+          final DocumentProjection projection = DocumentProjection.fromArguments(arguments);
           Query query = getQuery(arguments);
-          Task<QuerySnapshot> task = query.get();
+          Task<QuerySnapshot> task = query.get(getSource(arguments));
           task.addOnSuccessListener(
+                  serializationExecutor,
                   new OnSuccessListener<QuerySnapshot>() {
                     @Override
                     public void onSuccess(QuerySnapshot querySnapshot) {
-                      result.success(parseQuerySnapshot(querySnapshot));
+                      successFromBackground(
+                          result,
+                          new FirestoreMessageCodec.EncodedQuerySnapshot(
+                              querySnapshot,
+                              Collections.<String, Object>emptyMap(),
+                              false,
+                              projection));
                     }
                   })
               .addOnFailureListener(
@@ -498,6 +1127,74 @@ public class CloudFirestorePlugin implements MethodCallHandler {
                   });
           break;
         }
+      case "Query#getDocumentsPage":
+        {
+          Map<String, Object> arguments = call.arguments();
+          int pageSize = (Integer) arguments.get("pageSize");
+          Integer cursor = (Integer) arguments.get("cursor");
+          Query query = getQuery(arguments);
+          // The limit of each page replaces the limit of the query, which is enforced by counting
+          // the documents of the pages instead.
+          Long remaining;
+          if (cursor != null) {
+            PageCursor pageCursor;
+            synchronized (cursors) {
+              // Each cursor is used once; the next page creates a new one.
+              pageCursor = cursors.remove(cursor);
+            }
+            if (pageCursor == null) {
+              result.error("Error performing getDocumentsPage", "The cursor has expired.", null);
+              break;
+            }
+            query = query.startAfter(pageCursor.lastDocument);
+            remaining = pageCursor.remaining;
+          } else {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> parameters = (Map<String, Object>) arguments.get("parameters");
+            Number limit = (Number) parameters.get("limit");
+            remaining = limit != null ? limit.longValue() : null;
+          }
+          final long pageLimit = remaining != null ? Math.min(pageSize, remaining) : pageSize;
+          final Long remainingBeforePage = remaining;
+          Task<QuerySnapshot> task = query.limit(pageLimit).get();
+          task.addOnSuccessListener(
+                  serializationExecutor,
+                  new OnSuccessListener<QuerySnapshot>() {
+                    @Override
+                    public void onSuccess(QuerySnapshot querySnapshot) {
+                      Map<String, Object> extras = new HashMap<>();
+                      List<DocumentSnapshot> documents = querySnapshot.getDocuments();
+                      Long remainingAfterPage =
+                          remainingBeforePage != null
+                              ? remainingBeforePage - documents.size()
+                              : null;
+                      // A short page, or one that reaches the limit of the query, is the last one.
+                      if (documents.size() == pageLimit
+                          && (remainingAfterPage == null || remainingAfterPage > 0)) {
+                        synchronized (cursors) {
+                          int cursorId = nextCursorId++;
+                          cursors.put(
+                              cursorId,
+                              new PageCursor(
+                                  documents.get(documents.size() - 1), remainingAfterPage));
+                          extras.put("cursor", cursorId);
+                        }
+                      }
+                      successFromBackground(
+                          result,
+                          new FirestoreMessageCodec.EncodedQuerySnapshot(
+                              querySnapshot, extras, false, null));
+                    }
+                  })
+              .addOnFailureListener(
+                  new OnFailureListener() {
+                    @Override
+                    public void onFailure(@NonNull Exception e) {
+                      result.error("Error performing getDocumentsPage", e.getMessage(), null);
+                    }
+                  });
+          break;
+        }
       case "DocumentReference#setData":
         {
           Map<String, Object> arguments = call.arguments();
@@ -527,19 +1224,13 @@ public class CloudFirestorePlugin implements MethodCallHandler {
         {
           Map<String, Object> arguments = call.arguments();
           DocumentReference documentReference = getDocumentReference(arguments);
-          Task<DocumentSnapshot> task = documentReference.get();
+          Task<DocumentSnapshot> task = documentReference.get(getSource(arguments));
           task.addOnSuccessListener(
+                  serializationExecutor,
                   new OnSuccessListener<DocumentSnapshot>() {
                     @Override
                     public void onSuccess(DocumentSnapshot documentSnapshot) {
-                      Map<String, Object> snapshotMap = new HashMap<>();
-                      snapshotMap.put("path", documentSnapshot.getReference().getPath());
-                      if (documentSnapshot.exists()) {
-                        snapshotMap.put("data", documentSnapshot.getData());
-                      } else {
-                        snapshotMap.put("data", null);
-                      }
-                      result.success(snapshotMap);
+                      successFromBackground(result, parseDocumentSnapshot(documentSnapshot));
                     }
                   })
               .addOnFailureListener(
@@ -567,59 +1258,3 @@ public class CloudFirestorePlugin implements MethodCallHandler {
     }
   }
 }
-
-final class FirestoreMessageCodec extends StandardMessageCodec {
-  public static final FirestoreMessageCodec INSTANCE = new FirestoreMessageCodec();
-  private static final Charset UTF8 = Charset.forName("UTF8");
-  private static final byte DATE_TIME = (byte) 128;
-  private static final byte GEO_POINT = (byte) 129;
-  private static final byte DOCUMENT_REFERENCE = (byte) 130;
-  private static final byte BLOB = (byte) 131;
-
-  @Override
-  protected void writeValue(ByteArrayOutputStream stream, Object value) {
-    if (value instanceof Date) {
-      stream.write(DATE_TIME);
-      writeLong(stream, ((Date) value).getTime());
-    } else if (value instanceof GeoPoint) {
-      stream.write(GEO_POINT);
-      writeAlignment(stream, 8);
-      writeDouble(stream, ((GeoPoint) value).getLatitude());
-      writeDouble(stream, ((GeoPoint) value).getLongitude());
-    } else if (value instanceof DocumentReference) {
-      stream.write(DOCUMENT_REFERENCE);
-      writeBytes(
-          stream, ((DocumentReference) value).getFirestore().getApp().getName().getBytes(UTF8));
-      writeBytes(stream, ((DocumentReference) value).getPath().getBytes(UTF8));
-    } else if (value instanceof Blob) {
-      stream.write(BLOB);
-      writeBytes(stream, ((Blob) value).toBytes());
-    } else {
-      super.writeValue(stream, value);
-    }
-  }
-
-  @Override
-  protected Object readValueOfType(byte type, ByteBuffer buffer) {
-    switch (type) {
-      case DATE_TIME:
-        return new Date(buffer.getLong());
-      case GEO_POINT:
-        readAlignment(buffer, 8);
-        return new GeoPoint(buffer.getDouble(), buffer.getDouble());
-      case DOCUMENT_REFERENCE:
-        final byte[] appNameBytes = readBytes(buffer);
-        String appName = new String(appNameBytes, UTF8);
-        final FirebaseFirestore firestore =
-            FirebaseFirestore.getInstance(FirebaseApp.getInstance(appName));
-        final byte[] pathBytes = readBytes(buffer);
-        final String path = new String(pathBytes, UTF8);
-        return firestore.document(path);
-      case BLOB:
-        final byte[] bytes = readBytes(buffer);
-        return Blob.fromBytes(bytes);
-      default:
-        return super.readValueOfType(type, buffer);
-    }
-  }
-}
@@ -0,0 +1,148 @@
+// Copyright 2018 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.firebase.cloudfirestore;
+
+import android.support.annotation.Nullable;
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Selects the part of documents that is sent to Dart.
+ *
+ * <p>With a list of fields, only those fields are read from a document with {@link
+ * DocumentSnapshot#get(FieldPath)}, instead of converting all of its data. Fields are dot-separated
+ * paths, and nested fields are sent in nested maps, the way they are stored. With a maximum Blob
+ * size, larger Blobs are replaced with null.
+ */
+final class DocumentProjection {
+  // The segments of each field, or null for all the fields.
+  @Nullable private final List<List<String>> fields;
+  @Nullable private final List<FieldPath> fieldPaths;
+  // The maximum size of a Blob in bytes, or 0 for no limit.
+  private final int maxBlobSize;
+
+  private DocumentProjection(@Nullable List<String> fields, int maxBlobSize) {
+    if (fields == null) {
+      this.fields = null;
+      this.fieldPaths = null;
+    } else {
+      this.fields = new ArrayList<>();
+      this.fieldPaths = new ArrayList<>();
+      for (String field : fields) {
+        String[] segments = field.split("\\.");
+        this.fields.add(Arrays.asList(segments));
+        this.fieldPaths.add(FieldPath.of(segments));
+      }
+    }
+    this.maxBlobSize = maxBlobSize;
+  }
+
+  /**
+   * Returns the projection described by the {@code projection} argument of a method call, or null
+   * if whole documents are requested.
+   */
+  @Nullable
+  static DocumentProjection fromArguments(Map<String, Object> arguments) {
+    @SuppressWarnings("unchecked")
+    Map<String, Object> projection = (Map<String, Object>) arguments.get("projection");
+    if (projection == null) {
+      return null;
+    }
+    @SuppressWarnings("unchecked")
+    List<String> fields = (List<String>) projection.get("fields");
+    Integer maxBlobSize = (Integer) projection.get("maxBlobSize");
+    if (fields == null && maxBlobSize == null) {
+      return null;
+    }
+    return new DocumentProjection(fields, maxBlobSize != null ? maxBlobSize : 0);
+  }
+
+  /** Returns the data of an existing document, as selected by {@code projection}. */
+  static Map<String, Object> getData(
+      DocumentSnapshot document, @Nullable DocumentProjection projection) {
+    return projection == null ? document.getData() : projection.getData(document);
+  }
+
+  private Map<String, Object> getData(DocumentSnapshot document) {
+    Map<String, Object> data;
+    if (fieldPaths == null) {
+      data = document.getData();
+    } else {
+      data = new HashMap<>();
+      for (int i = 0; i < fieldPaths.size(); i++) {
+        FieldPath fieldPath = fieldPaths.get(i);
+        if (document.contains(fieldPath)) {
+          put(data, fields.get(i), document.get(fieldPath));
+        }
+      }
+    }
+    if (maxBlobSize > 0) {
+      data = capBlobs(data);
+    }
+    return data;
+  }
+
+  private static void put(Map<String, Object> data, List<String> segments, Object value) {
+    Map<String, Object> map = data;
+    for (String segment : segments.subList(0, segments.size() - 1)) {
+      Object child = map.get(segment);
+      if (child == null) {
+        child = new HashMap<String, Object>();
+        map.put(segment, child);
+      } else if (!(child instanceof Map)) {
+        // The field is nested in a field that was requested as a whole.
+        return;
+      }
+      @SuppressWarnings("unchecked")
+      Map<String, Object> childMap = (Map<String, Object>) child;
+      map = childMap;
+    }
+    map.put(segments.get(segments.size() - 1), value);
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> T capBlobs(T value) {
+    if (value instanceof Blob) {
+      return ((Blob) value).toBytes().length > maxBlobSize ? null : value;
+    } else if (value instanceof Map) {
+      Map<String, Object> map = new HashMap<>();
+      for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+        map.put(entry.getKey(), capBlobs(entry.getValue()));
+      }
+      return (T) map;
+    } else if (value instanceof List) {
+      List<Object> list = new ArrayList<>();
+      for (Object element : (List<Object>) value) {
+        list.add(capBlobs(element));
+      }
+      return (T) list;
+    }
+    return value;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof DocumentProjection)) {
+      return false;
+    }
+    DocumentProjection that = (DocumentProjection) o;
+    return maxBlobSize == that.maxBlobSize
+        && (fields == null ? that.fields == null : fields.equals(that.fields));
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * (fields == null ? 0 : fields.hashCode()) + maxBlobSize;
+  }
+}
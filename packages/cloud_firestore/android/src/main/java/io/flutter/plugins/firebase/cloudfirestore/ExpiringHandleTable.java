@@ -0,0 +1,70 @@
+// Copyright 2018 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.firebase.cloudfirestore;
+
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.util.SparseArray;
+
+/**
+ * Objects that Dart refers to by handle, which are dropped once they have not been used for a
+ * while.
+ *
+ * <p>Dart may abandon an object without releasing its handle, for instance a write batch that is
+ * never committed. Entries that were not used for {@code ttlMs} are removed whenever an entry is
+ * added, so the table does not grow with abandoned entries. Only used on the platform thread.
+ */
+final class ExpiringHandleTable<T> {
+  private static final class Entry<T> {
+    final T value;
+    long lastUsedTimeMs;
+
+    Entry(T value, long lastUsedTimeMs) {
+      this.value = value;
+      this.lastUsedTimeMs = lastUsedTimeMs;
+    }
+  }
+
+  private final long ttlMs;
+  private final SparseArray<Entry<T>> entries = new SparseArray<>();
+
+  ExpiringHandleTable(long ttlMs) {
+    this.ttlMs = ttlMs;
+  }
+
+  void put(int handle, T value) {
+    long now = SystemClock.elapsedRealtime();
+    removeExpired(now);
+    entries.put(handle, new Entry<>(value, now));
+  }
+
+  /** Returns the value of {@code handle}, or null if it was removed or has expired. */
+  @Nullable
+  T get(int handle) {
+    Entry<T> entry = entries.get(handle);
+    if (entry == null) {
+      return null;
+    }
+    entry.lastUsedTimeMs = SystemClock.elapsedRealtime();
+    return entry.value;
+  }
+
+  void remove(int handle) {
+    entries.remove(handle);
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  private void removeExpired(long now) {
+    // Iterates backwards, since removing an entry shifts the following ones.
+    for (int i = entries.size() - 1; i >= 0; i--) {
+      if (now - entries.valueAt(i).lastUsedTimeMs >= ttlMs) {
+        entries.removeAt(i);
+      }
+    }
+  }
+}
@@ -0,0 +1,258 @@
+// Copyright 2017 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.firebase.cloudfirestore;
+
+import android.support.annotation.Nullable;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.GeoPoint;
+import com.google.firebase.firestore.QuerySnapshot;
+import io.flutter.plugin.common.StandardMessageCodec;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+final class FirestoreMessageCodec extends StandardMessageCodec {
+  public static final FirestoreMessageCodec INSTANCE = new FirestoreMessageCodec();
+  private static final Charset UTF8 = Charset.forName("UTF8");
+  private static final byte DATE_TIME = (byte) 128;
+  private static final byte GEO_POINT = (byte) 129;
+  private static final byte DOCUMENT_REFERENCE = (byte) 130;
+  private static final byte BLOB = (byte) 131;
+  private static final byte QUERY_SNAPSHOT = (byte) 132;
+  private static final byte ENCODED_VALUE = (byte) 133;
+
+  private static final byte CHANGE_ADDED = 0;
+  private static final byte CHANGE_MODIFIED = 1;
+  private static final byte CHANGE_REMOVED = 2;
+
+  /**
+   * A value that was encoded ahead of time by {@link #encode}, so that writing it only copies its
+   * bytes.
+   *
+   * <p>The bytes are written as a nested message, since alignment padding depends on the offset
+   * the value was encoded at.
+   */
+  static final class EncodedValue {
+    final byte[] bytes;
+
+    private EncodedValue(byte[] bytes) {
+      this.bytes = bytes;
+    }
+  }
+
+  /** Encodes {@code value} on the calling thread. */
+  EncodedValue encode(Object value) {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    writeValue(stream, value);
+    return new EncodedValue(stream.toByteArray());
+  }
+
+  /**
+   * A {@link QuerySnapshot} to be written in the compact snapshot encoding, decoded on the Dart
+   * side into a map with the entries of {@code extras} and the {@code paths}, {@code documents}
+   * and {@code documentChanges} of the snapshot.
+   *
+   * <p>When {@code changesOnly} is set, the documents of the snapshot are left out and only the
+   * changed documents are written, for listeners that apply changes to the previous snapshot. The
+   * data of the documents is selected by {@code projection}, if any.
+   */
+  static final class EncodedQuerySnapshot {
+    final QuerySnapshot snapshot;
+    final Map<String, Object> extras;
+    final boolean changesOnly;
+    @Nullable final DocumentProjection projection;
+    // Whether the changes of the snapshot are replaced with an added change for every document.
+    final boolean allAdded;
+
+    EncodedQuerySnapshot(
+        QuerySnapshot snapshot,
+        Map<String, Object> extras,
+        boolean changesOnly,
+        @Nullable DocumentProjection projection) {
+      this(snapshot, extras, changesOnly, projection, false);
+    }
+
+    private EncodedQuerySnapshot(
+        QuerySnapshot snapshot,
+        Map<String, Object> extras,
+        boolean changesOnly,
+        @Nullable DocumentProjection projection,
+        boolean allAdded) {
+      this.snapshot = snapshot;
+      this.extras = extras;
+      this.changesOnly = changesOnly;
+      this.projection = projection;
+      this.allAdded = allAdded;
+    }
+
+    /**
+     * Returns {@code snapshot} as the first snapshot of a listener, in which every document is
+     * added, with an old index of -1 and its position as new index. This is how a snapshot that
+     * was received earlier is replayed to a listener that was not sent its changes.
+     */
+    static EncodedQuerySnapshot asFirstSnapshot(
+        QuerySnapshot snapshot,
+        Map<String, Object> extras,
+        @Nullable DocumentProjection projection) {
+      return new EncodedQuerySnapshot(snapshot, extras, false, projection, true);
+    }
+  }
+
+  @Override
+  protected void writeValue(ByteArrayOutputStream stream, Object value) {
+    if (value instanceof Date) {
+      stream.write(DATE_TIME);
+      writeLong(stream, ((Date) value).getTime());
+    } else if (value instanceof GeoPoint) {
+      stream.write(GEO_POINT);
+      writeAlignment(stream, 8);
+      writeDouble(stream, ((GeoPoint) value).getLatitude());
+      writeDouble(stream, ((GeoPoint) value).getLongitude());
+    } else if (value instanceof DocumentReference) {
+      stream.write(DOCUMENT_REFERENCE);
+      writeBytes(
+          stream, ((DocumentReference) value).getFirestore().getApp().getName().getBytes(UTF8));
+      writeBytes(stream, ((DocumentReference) value).getPath().getBytes(UTF8));
+    } else if (value instanceof Blob) {
+      stream.write(BLOB);
+      writeBytes(stream, ((Blob) value).toBytes());
+    } else if (value instanceof EncodedValue) {
+      stream.write(ENCODED_VALUE);
+      writeBytes(stream, ((EncodedValue) value).bytes);
+    } else if (value instanceof EncodedQuerySnapshot) {
+      stream.write(QUERY_SNAPSHOT);
+      writeQuerySnapshot(stream, (EncodedQuerySnapshot) value);
+    } else {
+      super.writeValue(stream, value);
+    }
+  }
+
+  /**
+   * Writes each document of the snapshot once. The documents of the snapshot come first, followed
+   * by the documents that only appear in the changes: the removed ones, or every changed document
+   * when only changes are written. The parent collection paths of the documents are interned, and
+   * changes refer to their document by its index.
+   */
+  private void writeQuerySnapshot(ByteArrayOutputStream stream, EncodedQuerySnapshot value) {
+    writeValue(stream, value.extras);
+
+    List<DocumentSnapshot> documents = new ArrayList<>();
+    if (!value.changesOnly) {
+      documents.addAll(value.snapshot.getDocuments());
+    }
+    int snapshotDocumentCount = documents.size();
+    List<DocumentChange> changes =
+        value.allAdded
+            ? Collections.<DocumentChange>emptyList()
+            : value.snapshot.getDocumentChanges();
+    for (DocumentChange change : changes) {
+      if (value.changesOnly || change.getType() == DocumentChange.Type.REMOVED) {
+        documents.add(change.getDocument());
+      }
+    }
+
+    Map<String, Integer> parentIndexes = new HashMap<>();
+    List<String> parents = new ArrayList<>();
+    int[] documentParents = new int[documents.size()];
+    Map<String, Integer> documentIndexes = new HashMap<>();
+    for (int i = 0; i < documents.size(); i++) {
+      DocumentReference reference = documents.get(i).getReference();
+      if (i < snapshotDocumentCount) {
+        documentIndexes.put(reference.getPath(), i);
+      }
+      String parent = reference.getParent().getPath();
+      Integer index = parentIndexes.get(parent);
+      if (index == null) {
+        index = parents.size();
+        parentIndexes.put(parent, index);
+        parents.add(parent);
+      }
+      documentParents[i] = index;
+    }
+
+    writeSize(stream, parents.size());
+    for (String parent : parents) {
+      writeBytes(stream, parent.getBytes(UTF8));
+    }
+    writeSize(stream, snapshotDocumentCount);
+    writeSize(stream, documents.size() - snapshotDocumentCount);
+    for (int i = 0; i < documents.size(); i++) {
+      DocumentSnapshot document = documents.get(i);
+      writeSize(stream, documentParents[i]);
+      writeBytes(stream, document.getId().getBytes(UTF8));
+      writeValue(stream, DocumentProjection.getData(document, value.projection));
+    }
+
+    if (value.allAdded) {
+      writeSize(stream, snapshotDocumentCount);
+      for (int i = 0; i < snapshotDocumentCount; i++) {
+        stream.write(CHANGE_ADDED);
+        writeInt(stream, -1);
+        writeInt(stream, i);
+        writeSize(stream, i);
+      }
+      return;
+    }
+    writeSize(stream, changes.size());
+    int changedIndex = snapshotDocumentCount;
+    for (DocumentChange change : changes) {
+      // The new index of a change only accounts for the changes before it, so the document is
+      // looked up by path instead.
+      int documentIndex =
+          value.changesOnly || change.getType() == DocumentChange.Type.REMOVED
+              ? changedIndex++
+              : documentIndexes.get(change.getDocument().getReference().getPath());
+      switch (change.getType()) {
+        case ADDED:
+          stream.write(CHANGE_ADDED);
+          break;
+        case MODIFIED:
+          stream.write(CHANGE_MODIFIED);
+          break;
+        case REMOVED:
+          stream.write(CHANGE_REMOVED);
+          break;
+      }
+      writeInt(stream, change.getOldIndex());
+      writeInt(stream, change.getNewIndex());
+      writeSize(stream, documentIndex);
+    }
+  }
+
+  @Override
+  protected Object readValueOfType(byte type, ByteBuffer buffer) {
+    switch (type) {
+      case DATE_TIME:
+        return new Date(buffer.getLong());
+      case GEO_POINT:
+        readAlignment(buffer, 8);
+        return new GeoPoint(buffer.getDouble(), buffer.getDouble());
+      case DOCUMENT_REFERENCE:
+        final byte[] appNameBytes = readBytes(buffer);
+        String appName = new String(appNameBytes, UTF8);
+        final FirebaseFirestore firestore =
+            FirebaseFirestore.getInstance(FirebaseApp.getInstance(appName));
+        final byte[] pathBytes = readBytes(buffer);
+        final String path = new String(pathBytes, UTF8);
+        return firestore.document(path);
+      case BLOB:
+        final byte[] bytes = readBytes(buffer);
+        return Blob.fromBytes(bytes);
+      default:
+        return super.readValueOfType(type, buffer);
+    }
+  }
+}
@@ -0,0 +1,54 @@
+// Copyright 2018 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.firebase.cloudfirestore;
+
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import java.util.Random;
+
+/**
+ * The delays between the resubscriptions of a snapshot listener that failed.
+ *
+ * <p>Delays double from {@link #INITIAL_DELAY_MS} up to {@link #MAX_DELAY_MS}, and half of each
+ * delay is random, so that listeners that failed together do not resubscribe together. Not
+ * thread-safe.
+ */
+final class ListenerBackoff {
+  static final long INITIAL_DELAY_MS = 1000;
+  static final long MAX_DELAY_MS = 60 * 1000;
+
+  private final Random random = new Random();
+  private int attempts;
+
+  /** Whether a listener that failed with {@code code} may succeed when subscribing again. */
+  static boolean isRetryable(FirebaseFirestoreException.Code code) {
+    switch (code) {
+      case ABORTED:
+      case DEADLINE_EXCEEDED:
+      case INTERNAL:
+      case PERMISSION_DENIED:
+      case RESOURCE_EXHAUSTED:
+      case UNAUTHENTICATED:
+      case UNAVAILABLE:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  long nextDelayMs() {
+    long delay = MAX_DELAY_MS;
+    // Past 2^6 seconds the delay is capped anyway.
+    if (attempts < 6) {
+      delay = Math.min(MAX_DELAY_MS, INITIAL_DELAY_MS << attempts);
+    }
+    attempts++;
+    return delay / 2 + (long) (random.nextDouble() * (delay / 2));
+  }
+
+  /** Called when the listener received a snapshot again. */
+  void reset() {
+    attempts = 0;
+  }
+}
@@ -0,0 +1,190 @@
+// Copyright 2018 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.firebase.cloudfirestore;
+
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.GeoPoint;
+import com.google.firebase.firestore.QuerySnapshot;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of {@link FirestoreMessageCodec} on synthetic documents.
+ *
+ * <p>A "flat" document has a few dozen fields of every supported type, with Blobs from 16 bytes
+ * to 16 KB. A "nested" document also holds documents without Blobs in maps and lists nested a few
+ * levels deep.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class FirestoreMessageCodecBenchmark {
+  private static final int[] BLOB_SIZES = {16, 256, 4096, 16384};
+  private static final int NESTING_DEPTH = 3;
+
+  @Param({"10", "100", "1000"})
+  public int documentCount;
+
+  @Param({"flat", "nested"})
+  public String shape;
+
+  private final FirestoreMessageCodec codec = FirestoreMessageCodec.INSTANCE;
+  private FirebaseFirestore firestore;
+  private Map<String, Object> documents;
+  private ByteBuffer encodedDocuments;
+  private QuerySnapshot snapshot;
+  private DocumentProjection projection;
+
+  @Setup
+  public void setUp() {
+    firestore = FirebaseFirestore.getInstance(FirebaseApp.getInstance("[DEFAULT]"));
+    Random random = new Random(42);
+    documents = new HashMap<>();
+    List<DocumentSnapshot> snapshotDocuments = new ArrayList<>();
+    List<DocumentChange> changes = new ArrayList<>();
+    for (int i = 0; i < documentCount; i++) {
+      String path = "benchmarks/" + shape + "/documents/" + i;
+      Map<String, Object> data =
+          shape.equals("nested")
+              ? nestedDocument(random, NESTING_DEPTH)
+              : flatDocument(random, true);
+      documents.put(path, data);
+      DocumentSnapshot document = new DocumentSnapshot(firestore.document(path), data);
+      snapshotDocuments.add(document);
+      changes.add(new DocumentChange(document, DocumentChange.Type.ADDED, -1, i));
+    }
+    encodedDocuments = codec.encodeMessage(documents);
+    snapshot = new QuerySnapshot(snapshotDocuments, changes);
+
+    Map<String, Object> arguments = new HashMap<>();
+    Map<String, Object> projectionArguments = new HashMap<>();
+    projectionArguments.put("fields", Arrays.asList("title", "location", "nested.count"));
+    projectionArguments.put("maxBlobSize", 1024);
+    arguments.put("projection", projectionArguments);
+    projection = DocumentProjection.fromArguments(arguments);
+  }
+
+  @Benchmark
+  public ByteBuffer encodeDocuments() {
+    return codec.encodeMessage(documents);
+  }
+
+  @Benchmark
+  public Object decodeDocuments() {
+    encodedDocuments.rewind();
+    return codec.decodeMessage(encodedDocuments);
+  }
+
+  @Benchmark
+  public ByteBuffer encodeQuerySnapshot() {
+    return codec.encodeMessage(
+        new FirestoreMessageCodec.EncodedQuerySnapshot(
+            snapshot, Collections.<String, Object>emptyMap(), false, null));
+  }
+
+  @Benchmark
+  public ByteBuffer encodeQuerySnapshotWithProjection() {
+    return codec.encodeMessage(
+        new FirestoreMessageCodec.EncodedQuerySnapshot(
+            snapshot, Collections.<String, Object>emptyMap(), false, projection));
+  }
+
+  /**
+   * Converts the snapshot to maps of paths, data and changes before encoding it, as the plugin did
+   * before the compact snapshot encoding, for comparison with {@link #encodeQuerySnapshot}.
+   */
+  @Benchmark
+  public ByteBuffer encodeQuerySnapshotAsMaps() {
+    Map<String, Object> arguments = new HashMap<>();
+    List<String> paths = new ArrayList<>();
+    List<Map<String, Object>> data = new ArrayList<>();
+    for (DocumentSnapshot document : snapshot.getDocuments()) {
+      paths.add(document.getReference().getPath());
+      data.add(document.getData());
+    }
+    arguments.put("paths", paths);
+    arguments.put("documents", data);
+    List<Map<String, Object>> documentChanges = new ArrayList<>();
+    for (DocumentChange documentChange : snapshot.getDocumentChanges()) {
+      Map<String, Object> change = new HashMap<>();
+      change.put("type", "DocumentChangeType." + documentChange.getType().name().toLowerCase());
+      change.put("document", documentChange.getDocument().getData());
+      change.put("path", documentChange.getDocument().getReference().getPath());
+      change.put("oldIndex", documentChange.getOldIndex());
+      change.put("newIndex", documentChange.getNewIndex());
+      documentChanges.add(change);
+    }
+    arguments.put("documentChanges", documentChanges);
+    return codec.encodeMessage(arguments);
+  }
+
+  private Map<String, Object> flatDocument(Random random, boolean withBlobs) {
+    Map<String, Object> data = new HashMap<>();
+    data.put("title", "Document " + random.nextInt());
+    data.put("description", randomString(random, 200));
+    data.put("count", random.nextInt(1000));
+    data.put("total", random.nextLong());
+    data.put("score", random.nextDouble());
+    data.put("published", random.nextBoolean());
+    data.put("missing", null);
+    data.put("createdAt", new Date(1500000000000L + random.nextInt()));
+    data.put(
+        "location", new GeoPoint(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180));
+    data.put("author", firestore.document("users/" + random.nextInt(100)));
+    if (withBlobs) {
+      for (int size : BLOB_SIZES) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        data.put("blob" + size, Blob.fromBytes(bytes));
+      }
+    }
+    List<Object> tags = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      tags.add(randomString(random, 8));
+    }
+    data.put("tags", tags);
+    return data;
+  }
+
+  private Map<String, Object> nestedDocument(Random random, int depth) {
+    Map<String, Object> data = flatDocument(random, depth == NESTING_DEPTH);
+    if (depth > 0) {
+      data.put("nested", nestedDocument(random, depth - 1));
+      List<Object> children = new ArrayList<>();
+      children.add(nestedDocument(random, depth - 1));
+      children.add(new Date(1500000000000L + random.nextInt()));
+      data.put("children", children);
+    }
+    return data;
+  }
+
+  private static String randomString(Random random, int length) {
+    StringBuilder builder = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      builder.append((char) ('a' + random.nextInt(26)));
+    }
+    return builder.toString();
+  }
+}
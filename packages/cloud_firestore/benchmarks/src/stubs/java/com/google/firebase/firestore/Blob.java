@@ -0,0 +1,24 @@
+// Copyright 2018 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.google.firebase.firestore;
+
+import java.util.Arrays;
+
+/** Stub of a Blob, for running benchmarks on a plain JVM. Like the SDK, it copies its bytes. */
+public class Blob {
+  private final byte[] bytes;
+
+  private Blob(byte[] bytes) {
+    this.bytes = bytes;
+  }
+
+  public static Blob fromBytes(byte[] bytes) {
+    return new Blob(Arrays.copyOf(bytes, bytes.length));
+  }
+
+  public byte[] toBytes() {
+    return Arrays.copyOf(bytes, bytes.length);
+  }
+}
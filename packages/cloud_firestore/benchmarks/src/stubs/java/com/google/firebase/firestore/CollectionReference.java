@@ -0,0 +1,24 @@
+// Copyright 2018 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.google.firebase.firestore;
+
+/** Stub of a collection reference, for running benchmarks on a plain JVM. */
+public class CollectionReference {
+  private final FirebaseFirestore firestore;
+  private final String path;
+
+  CollectionReference(FirebaseFirestore firestore, String path) {
+    this.firestore = firestore;
+    this.path = path;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  public DocumentReference document(String id) {
+    return new DocumentReference(firestore, path + "/" + id);
+  }
+}
@@ -0,0 +1,42 @@
+// Copyright 2018 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.google.firebase.firestore;
+
+/** Stub of a document change, for running benchmarks on a plain JVM. */
+public class DocumentChange {
+  public enum Type {
+    ADDED,
+    MODIFIED,
+    REMOVED
+  }
+
+  private final Type type;
+  private final DocumentSnapshot document;
+  private final int oldIndex;
+  private final int newIndex;
+
+  public DocumentChange(DocumentSnapshot document, Type type, int oldIndex, int newIndex) {
+    this.type = type;
+    this.document = document;
+    this.oldIndex = oldIndex;
+    this.newIndex = newIndex;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public DocumentSnapshot getDocument() {
+    return document;
+  }
+
+  public int getOldIndex() {
+    return oldIndex;
+  }
+
+  public int getNewIndex() {
+    return newIndex;
+  }
+}
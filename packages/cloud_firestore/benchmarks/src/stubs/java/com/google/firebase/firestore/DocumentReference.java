@@ -0,0 +1,32 @@
+// Copyright 2018 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.google.firebase.firestore;
+
+/** Stub of a document reference, for running benchmarks on a plain JVM. */
+public class DocumentReference {
+  private final FirebaseFirestore firestore;
+  private final String path;
+
+  DocumentReference(FirebaseFirestore firestore, String path) {
+    this.firestore = firestore;
+    this.path = path;
+  }
+
+  public FirebaseFirestore getFirestore() {
+    return firestore;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  public String getId() {
+    return path.substring(path.lastIndexOf('/') + 1);
+  }
+
+  public CollectionReference getParent() {
+    return new CollectionReference(firestore, path.substring(0, path.lastIndexOf('/')));
+  }
+}
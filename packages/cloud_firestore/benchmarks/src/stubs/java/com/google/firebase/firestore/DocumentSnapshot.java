@@ -0,0 +1,79 @@
+// Copyright 2018 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.google.firebase.firestore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stub of a document snapshot, for running benchmarks on a plain JVM.
+ *
+ * <p>Like the SDK, which converts its internal values on each call, {@link #getData()} and {@link
+ * #get(FieldPath)} return fresh copies of the maps and lists of the document.
+ */
+public class DocumentSnapshot {
+  private final DocumentReference reference;
+  private final Map<String, Object> data;
+
+  public DocumentSnapshot(DocumentReference reference, Map<String, Object> data) {
+    this.reference = reference;
+    this.data = data;
+  }
+
+  public DocumentReference getReference() {
+    return reference;
+  }
+
+  public String getId() {
+    return reference.getId();
+  }
+
+  public boolean exists() {
+    return data != null;
+  }
+
+  @SuppressWarnings("unchecked")
+  public Map<String, Object> getData() {
+    return (Map<String, Object>) copy(data);
+  }
+
+  public boolean contains(FieldPath fieldPath) {
+    return lookUp(fieldPath) != null;
+  }
+
+  public Object get(FieldPath fieldPath) {
+    return copy(lookUp(fieldPath));
+  }
+
+  private Object lookUp(FieldPath fieldPath) {
+    Object value = data;
+    for (String segment : fieldPath.segments) {
+      if (!(value instanceof Map)) {
+        return null;
+      }
+      value = ((Map<?, ?>) value).get(segment);
+    }
+    return value;
+  }
+
+  private static Object copy(Object value) {
+    if (value instanceof Map) {
+      Map<String, Object> map = new HashMap<>();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        map.put((String) entry.getKey(), copy(entry.getValue()));
+      }
+      return map;
+    } else if (value instanceof List) {
+      List<Object> list = new ArrayList<>();
+      for (Object element : (List<?>) value) {
+        list.add(copy(element));
+      }
+      return list;
+    }
+    return value;
+  }
+}
@@ -0,0 +1,21 @@
+// Copyright 2018 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.google.firebase.firestore;
+
+import java.util.Arrays;
+import java.util.List;
+
+/** Stub of a field path, for running benchmarks on a plain JVM. */
+public class FieldPath {
+  final List<String> segments;
+
+  private FieldPath(List<String> segments) {
+    this.segments = segments;
+  }
+
+  public static FieldPath of(String... fieldNames) {
+    return new FieldPath(Arrays.asList(fieldNames));
+  }
+}
@@ -0,0 +1,41 @@
+// Copyright 2018 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.google.firebase.firestore;
+
+import com.google.firebase.FirebaseApp;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Stub of a Firestore instance, for running benchmarks on a plain JVM. */
+public class FirebaseFirestore {
+  private static final Map<FirebaseApp, FirebaseFirestore> instances = new HashMap<>();
+
+  private final FirebaseApp app;
+
+  private FirebaseFirestore(FirebaseApp app) {
+    this.app = app;
+  }
+
+  public static synchronized FirebaseFirestore getInstance(FirebaseApp app) {
+    FirebaseFirestore instance = instances.get(app);
+    if (instance == null) {
+      instance = new FirebaseFirestore(app);
+      instances.put(app, instance);
+    }
+    return instance;
+  }
+
+  public FirebaseApp getApp() {
+    return app;
+  }
+
+  public CollectionReference collection(String path) {
+    return new CollectionReference(this, path);
+  }
+
+  public DocumentReference document(String path) {
+    return new DocumentReference(this, path);
+  }
+}
@@ -0,0 +1,26 @@
+// Copyright 2018 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.google.firebase.firestore;
+
+import java.util.List;
+
+/** Stub of a query snapshot, for running benchmarks on a plain JVM. */
+public class QuerySnapshot {
+  private final List<DocumentSnapshot> documents;
+  private final List<DocumentChange> documentChanges;
+
+  public QuerySnapshot(List<DocumentSnapshot> documents, List<DocumentChange> documentChanges) {
+    this.documents = documents;
+    this.documentChanges = documentChanges;
+  }
+
+  public List<DocumentSnapshot> getDocuments() {
+    return documents;
+  }
+
+  public List<DocumentChange> getDocumentChanges() {
+    return documentChanges;
+  }
+}
@@ -0,0 +1,119 @@
+// Copyright 2018 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.firebase.cloudfirestore;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QuerySnapshot;
+import io.flutter.plugin.common.StandardMessageCodec;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FirestoreMessageCodecTest {
+  private QuerySnapshot modificationSnapshot;
+
+  @Before
+  public void setUp() {
+    FirebaseFirestore firestore =
+        FirebaseFirestore.getInstance(FirebaseApp.getInstance("[DEFAULT]"));
+    Map<String, Object> data = Collections.<String, Object>singletonMap("v", 1);
+    DocumentSnapshot first = new DocumentSnapshot(firestore.document("foo/a"), data);
+    DocumentSnapshot second = new DocumentSnapshot(firestore.document("foo/b"), data);
+    // A snapshot received after the first one, in which only the second document changed.
+    modificationSnapshot =
+        new QuerySnapshot(
+            Arrays.asList(first, second),
+            Collections.singletonList(
+                new DocumentChange(second, DocumentChange.Type.MODIFIED, 1, 1)));
+  }
+
+  @Test
+  public void writesChangesOfSnapshot() {
+    DecodedSnapshot decoded =
+        DecodedSnapshot.decode(
+            new FirestoreMessageCodec.EncodedQuerySnapshot(
+                modificationSnapshot, Collections.<String, Object>emptyMap(), false, null));
+
+    assertEquals(Arrays.asList("foo/a", "foo/b"), decoded.paths);
+    assertEquals(Collections.singletonList(Arrays.asList(1, 1, 1, 1)), decoded.changes);
+  }
+
+  @Test
+  public void writesEveryDocumentAsAddedForFirstSnapshot() {
+    DecodedSnapshot decoded =
+        DecodedSnapshot.decode(
+            FirestoreMessageCodec.EncodedQuerySnapshot.asFirstSnapshot(
+                modificationSnapshot, Collections.<String, Object>emptyMap(), null));
+
+    assertEquals(Arrays.asList("foo/a", "foo/b"), decoded.paths);
+    assertEquals(0, decoded.extraDocumentCount);
+    assertEquals(
+        Arrays.asList(Arrays.asList(0, -1, 0, 0), Arrays.asList(0, -1, 1, 1)), decoded.changes);
+  }
+
+  /**
+   * The parts of the compact snapshot encoding that the tests check. Each change is a list of its
+   * type, old index, new index and document index.
+   */
+  private static final class DecodedSnapshot extends StandardMessageCodec {
+    private static final Charset UTF8 = Charset.forName("UTF8");
+
+    final List<String> paths = new ArrayList<>();
+    int extraDocumentCount;
+    final List<List<Integer>> changes = new ArrayList<>();
+
+    static DecodedSnapshot decode(FirestoreMessageCodec.EncodedQuerySnapshot value) {
+      ByteBuffer buffer = FirestoreMessageCodec.INSTANCE.encodeMessage(value);
+      // Like messages sent to Dart, the encoded buffer is positioned at its end.
+      buffer.rewind();
+      buffer.order(ByteOrder.nativeOrder());
+      DecodedSnapshot decoded = new DecodedSnapshot();
+      decoded.read(buffer);
+      return decoded;
+    }
+
+    private void read(ByteBuffer buffer) {
+      assertEquals((byte) 132, buffer.get());
+      readValue(buffer);
+      List<String> parents = new ArrayList<>();
+      int parentCount = readSize(buffer);
+      for (int i = 0; i < parentCount; i++) {
+        parents.add(new String(readBytes(buffer), UTF8));
+      }
+      int snapshotDocumentCount = readSize(buffer);
+      extraDocumentCount = readSize(buffer);
+      Map<Integer, String> documentPaths = new HashMap<>();
+      for (int i = 0; i < snapshotDocumentCount + extraDocumentCount; i++) {
+        String parent = parents.get(readSize(buffer));
+        String path = parent + "/" + new String(readBytes(buffer), UTF8);
+        readValue(buffer);
+        documentPaths.put(i, path);
+        if (i < snapshotDocumentCount) {
+          paths.add(path);
+        }
+      }
+      int changeCount = readSize(buffer);
+      for (int i = 0; i < changeCount; i++) {
+        changes.add(
+            Arrays.asList(
+                (int) buffer.get(), buffer.getInt(), buffer.getInt(), readSize(buffer)));
+      }
+      assertEquals(0, buffer.remaining());
+    }
+  }
+}
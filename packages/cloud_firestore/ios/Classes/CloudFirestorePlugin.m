@@ -23,6 +23,16 @@ FIRFirestore *getFirestore(NSDictionary *arguments) {
   return [FIRFirestore firestoreForApp:app];
 }
 
+FIRFirestoreSource getSource(NSDictionary *arguments) {
+  NSString *source = arguments[@"source"];
+  if ([@"server" isEqual:source]) {
+    return FIRFirestoreSourceServer;
+  } else if ([@"cache" isEqual:source]) {
+    return FIRFirestoreSourceCache;
+  }
+  return FIRFirestoreSourceDefault;
+}
+
 FIRDocumentReference *getDocumentReference(NSDictionary *arguments) {
   return [getFirestore(arguments) documentWithPath:arguments[@"path"]];
 }
@@ -281,7 +291,26 @@ const UInt8 BLOB = 131;
       dispatch_semaphore_wait(
           semaphore, dispatch_time(DISPATCH_TIME_NOW, [transactionTimeout integerValue] * 1000000));
 
-      return transactionResults[transactionId];
+      // Dart replies with the result of the handler and the writes it made.
+      NSDictionary *reply = transactionResults[transactionId];
+      [transactionResults removeObjectForKey:transactionId];
+      if (![reply isKindOfClass:[NSDictionary class]]) {
+        return nil;
+      }
+      NSArray *writes = reply[@"writes"];
+      for (NSDictionary *write in writes) {
+        FIRDocumentReference *document =
+            [getFirestore(call.arguments) documentWithPath:write[@"path"]];
+        NSString *type = write[@"type"];
+        if ([@"set" isEqualToString:type]) {
+          [transaction setData:write[@"data"] forDocument:document];
+        } else if ([@"update" isEqualToString:type]) {
+          [transaction updateData:write[@"data"] forDocument:document];
+        } else if ([@"delete" isEqualToString:type]) {
+          [transaction deleteDocument:document];
+        }
+      }
+      return reply[@"result"];
     }
         completion:^(id transactionResult, NSError *error) {
           if (error != nil) {
@@ -315,33 +344,6 @@ const UInt8 BLOB = 131;
                                    details:nil]);
       }
     });
-  } else if ([@"Transaction#update" isEqualToString:call.method]) {
-    dispatch_async(dispatch_get_global_queue(DISPATCH_QUEUE_PRIORITY_DEFAULT, 0), ^{
-      NSNumber *transactionId = call.arguments[@"transactionId"];
-      FIRDocumentReference *document = getDocumentReference(call.arguments);
-      FIRTransaction *transaction = transactions[transactionId];
-
-      [transaction updateData:call.arguments[@"data"] forDocument:document];
-      result(nil);
-    });
-  } else if ([@"Transaction#set" isEqualToString:call.method]) {
-    dispatch_async(dispatch_get_global_queue(DISPATCH_QUEUE_PRIORITY_DEFAULT, 0), ^{
-      NSNumber *transactionId = call.arguments[@"transactionId"];
-      FIRDocumentReference *document = getDocumentReference(call.arguments);
-      FIRTransaction *transaction = transactions[transactionId];
-
-      [transaction setData:call.arguments[@"data"] forDocument:document];
-      result(nil);
-    });
-  } else if ([@"Transaction#delete" isEqualToString:call.method]) {
-    dispatch_async(dispatch_get_global_queue(DISPATCH_QUEUE_PRIORITY_DEFAULT, 0), ^{
-      NSNumber *transactionId = call.arguments[@"transactionId"];
-      FIRDocumentReference *document = getDocumentReference(call.arguments);
-      FIRTransaction *transaction = transactions[transactionId];
-
-      [transaction deleteDocument:document];
-      result(nil);
-    });
   } else if ([@"DocumentReference#setData" isEqualToString:call.method]) {
     NSDictionary *options = call.arguments[@"options"];
     FIRDocumentReference *document = getDocumentReference(call.arguments);
@@ -359,8 +361,9 @@ const UInt8 BLOB = 131;
     [document deleteDocumentWithCompletion:defaultCompletionBlock];
   } else if ([@"DocumentReference#get" isEqualToString:call.method]) {
     FIRDocumentReference *document = getDocumentReference(call.arguments);
-    [document getDocumentWithCompletion:^(FIRDocumentSnapshot *_Nullable snapshot,
-                                          NSError *_Nullable error) {
+    [document getDocumentWithSource:getSource(call.arguments)
+                         completion:^(FIRDocumentSnapshot *_Nullable snapshot,
+                                      NSError *_Nullable error) {
       if (error) {
         result(error.flutterError);
       } else {
@@ -382,7 +385,15 @@ const UInt8 BLOB = 131;
     }
     id<FIRListenerRegistration> listener = [query
         addSnapshotListener:^(FIRQuerySnapshot *_Nullable snapshot, NSError *_Nullable error) {
-          if (error) result(error.flutterError);
+          if (error) {
+            [self.channel invokeMethod:@"QuerySnapshotError"
+                             arguments:@{
+                               @"handle" : handle,
+                               @"code" : error.flutterError.code,
+                               @"message" : error.localizedDescription,
+                             }];
+            return;
+          }
           NSMutableDictionary *arguments = [parseQuerySnapshot(snapshot) mutableCopy];
           [arguments setObject:handle forKey:@"handle"];
           [self.channel invokeMethod:@"QuerySnapshot" arguments:arguments];
@@ -394,7 +405,15 @@ const UInt8 BLOB = 131;
     FIRDocumentReference *document = getDocumentReference(call.arguments);
     id<FIRListenerRegistration> listener =
         [document addSnapshotListener:^(FIRDocumentSnapshot *snapshot, NSError *_Nullable error) {
-          if (error) result(error.flutterError);
+          if (error) {
+            [self.channel invokeMethod:@"DocumentSnapshotError"
+                             arguments:@{
+                               @"handle" : handle,
+                               @"code" : error.flutterError.code,
+                               @"message" : error.localizedDescription,
+                             }];
+            return;
+          }
           [self.channel invokeMethod:@"DocumentSnapshot"
                            arguments:@{
                              @"handle" : handle,
@@ -413,8 +432,9 @@ const UInt8 BLOB = 131;
                                  message:[exception name]
                                  details:[exception reason]]);
     }
-    [query getDocumentsWithCompletion:^(FIRQuerySnapshot *_Nullable snapshot,
-                                        NSError *_Nullable error) {
+    [query getDocumentsWithSource:getSource(call.arguments)
+                       completion:^(FIRQuerySnapshot *_Nullable snapshot,
+                                    NSError *_Nullable error) {
       if (error) result(error.flutterError);
       result(parseQuerySnapshot(snapshot));
     }];
@@ -423,6 +443,27 @@ const UInt8 BLOB = 131;
     [[_listeners objectForKey:handle] remove];
     [_listeners removeObjectForKey:handle];
     result(nil);
+  } else if ([@"Firestore#settings" isEqualToString:call.method]) {
+    FIRFirestore *firestore = getFirestore(call.arguments);
+    // Settings that are not passed keep their current value.
+    FIRFirestoreSettings *settings = firestore.settings;
+    NSNumber *persistenceEnabled = call.arguments[@"persistenceEnabled"];
+    if (![persistenceEnabled isEqual:[NSNull null]]) {
+      settings.persistenceEnabled = [persistenceEnabled boolValue];
+    }
+    NSNumber *cacheSizeBytes = call.arguments[@"cacheSizeBytes"];
+    if (![cacheSizeBytes isEqual:[NSNull null]]) {
+      settings.cacheSizeBytes = [cacheSizeBytes longLongValue];
+    }
+    @try {
+      // Throws if the instance has already been used.
+      firestore.settings = settings;
+      result(nil);
+    } @catch (NSException *exception) {
+      result([FlutterError errorWithCode:@"Error performing settings"
+                                 message:[exception name]
+                                 details:[exception reason]]);
+    }
   } else if ([@"WriteBatch#create" isEqualToString:call.method]) {
     __block NSNumber *handle = [NSNumber numberWithInt:_nextBatchHandle++];
     FIRWriteBatch *batch = [getFirestore(call.arguments) batch];
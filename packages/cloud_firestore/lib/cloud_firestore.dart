@@ -19,14 +19,17 @@ import 'src/utils/push_id_generator.dart';
 
 part 'src/collection_reference.dart';
 part 'src/blob.dart';
+part 'src/bulk_write.dart';
 part 'src/document_change.dart';
 part 'src/document_snapshot.dart';
 part 'src/document_reference.dart';
 part 'src/firestore.dart';
 part 'src/geo_point.dart';
 part 'src/query.dart';
+part 'src/query_page.dart';
 part 'src/query_snapshot.dart';
 part 'src/firestore_message_codec.dart';
 part 'src/snapshot_metadata.dart';
+part 'src/source.dart';
 part 'src/transaction.dart';
 part 'src/write_batch.dart';
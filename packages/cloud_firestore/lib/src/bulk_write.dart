@@ -0,0 +1,61 @@
+// Copyright 2018, the Chromium project authors.  Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+
+part of cloud_firestore;
+
+/// A single write of [Firestore.bulkWrite].
+class BulkWriteOperation {
+  /// Writes [data] to [document], merging it into the existing document if
+  /// [merge] is true.
+  BulkWriteOperation.setData(this.document, this.data, {this.merge: false})
+      : _type = 'set';
+
+  /// Updates fields of [document] with [data].
+  BulkWriteOperation.updateData(this.document, this.data)
+      : _type = 'update',
+        merge = false;
+
+  /// Deletes [document].
+  BulkWriteOperation.delete(this.document)
+      : _type = 'delete',
+        data = null,
+        merge = false;
+
+  final DocumentReference document;
+  final Map<String, dynamic> data;
+  final bool merge;
+  final String _type;
+
+  Map<String, dynamic> _toMap() {
+    return <String, dynamic>{
+      'type': _type,
+      'path': document.path,
+      'data': data,
+      'merge': merge,
+    };
+  }
+}
+
+/// The outcome of one of the batches committed by [Firestore.bulkWrite].
+class BulkWriteBatchResult {
+  BulkWriteBatchResult._(Map<dynamic, dynamic> data)
+      : start = data['start'],
+        count = data['count'],
+        error = data['error'];
+
+  /// The index of the first operation of the batch.
+  final int start;
+
+  /// The number of operations in the batch.
+  final int count;
+
+  /// The error that made the batch fail, or null if it was committed.
+  final String error;
+
+  /// Whether the operations of the batch were committed.
+  bool get isSuccessful => error == null;
+
+  @override
+  String toString() => '$runtimeType($start, $count, $error)';
+}
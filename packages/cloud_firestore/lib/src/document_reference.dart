@@ -68,10 +68,18 @@ class DocumentReference {
   /// Reads the document referenced by this [DocumentReference].
   ///
   /// If no document exists, the read will return null.
-  Future<DocumentSnapshot> get() async {
+  ///
+  /// By default, the document is read from the server when online. Use
+  /// [source] to read it only from the server, or only from the cache, which
+  /// does not wait for the network.
+  Future<DocumentSnapshot> get({Source source: Source.serverAndCache}) async {
     final Map<dynamic, dynamic> data = await Firestore.channel.invokeMethod(
       'DocumentReference#get',
-      <String, dynamic>{'app': firestore.app.name, 'path': path},
+      <String, dynamic>{
+        'app': firestore.app.name,
+        'path': path,
+        'source': _getSourceString(source),
+      },
     );
     return new DocumentSnapshot._(
       data['path'],
@@ -97,8 +105,19 @@ class DocumentReference {
   }
 
   /// Notifies of documents at this location
+  ///
+  /// When [fields] is set, the document only contains those fields, given as
+  /// dot-separated paths. When [maxBlobSize] is set, larger [Blob]s are
+  /// replaced with null. Only supported on Android; ignored elsewhere.
+  ///
+  /// Errors are added to the stream, and [resubscribeOnError] retries
+  /// transient ones, as for [Query.snapshots].
   // TODO(jackson): Reduce code duplication with [Query]
-  Stream<DocumentSnapshot> snapshots() {
+  Stream<DocumentSnapshot> snapshots({
+    List<String> fields,
+    int maxBlobSize,
+    bool resubscribeOnError: false,
+  }) {
     Future<int> _handle;
     // It's fine to let the StreamController be garbage collected once all the
     // subscribers have cancelled; this analyzer warning is safe to ignore.
@@ -110,6 +129,8 @@ class DocumentReference {
           <String, dynamic>{
             'app': firestore.app.name,
             'path': path,
+            'projection': _projectionArguments(fields, maxBlobSize),
+            'resubscribeOnError': resubscribeOnError,
           },
         ).then<int>((dynamic result) => result);
         _handle.then((int handle) {
@@ -122,7 +143,7 @@ class DocumentReference {
             'Query#removeListener',
             <String, dynamic>{'handle': handle},
           );
-          Firestore._queryObservers.remove(handle);
+          Firestore._documentObservers.remove(handle);
         });
       },
     );
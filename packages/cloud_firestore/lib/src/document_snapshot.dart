@@ -39,3 +39,12 @@ Map<String, dynamic> _asStringKeyedMap(Map<dynamic, dynamic> map) {
     return new Map<String, dynamic>.from(map);
   }
 }
+
+// The argument that selects the data sent for each document, or null for
+// whole documents.
+Map<String, dynamic> _projectionArguments(
+    List<String> fields, int maxBlobSize) {
+  assert(maxBlobSize == null || maxBlobSize > 0);
+  if (fields == null && maxBlobSize == null) return null;
+  return <String, dynamic>{'fields': fields, 'maxBlobSize': maxBlobSize};
+}
@@ -17,6 +17,9 @@ class Firestore {
   static final Map<int, StreamController<QuerySnapshot>> _queryObservers =
       <int, StreamController<QuerySnapshot>>{};
 
+  // The last snapshot of each listener receiving only document changes.
+  static final Map<int, QuerySnapshot> _querySnapshots = <int, QuerySnapshot>{};
+
   static final Map<int, StreamController<DocumentSnapshot>> _documentObservers =
       <int, StreamController<DocumentSnapshot>>{};
 
@@ -30,9 +33,12 @@ class Firestore {
     if (_initialized) return;
     channel.setMethodCallHandler((MethodCall call) {
       if (call.method == 'QuerySnapshot') {
-        final QuerySnapshot snapshot =
-            new QuerySnapshot._(call.arguments, this);
-        _queryObservers[call.arguments['handle']].add(snapshot);
+        // Listeners of identical queries share their snapshots.
+        final List<dynamic> handles =
+            call.arguments['handles'] ?? <dynamic>[call.arguments['handle']];
+        for (int handle in handles) {
+          _addQuerySnapshot(handle, call.arguments);
+        }
       } else if (call.method == 'DocumentSnapshot') {
         final DocumentSnapshot snapshot = new DocumentSnapshot._(
           call.arguments['path'],
@@ -40,16 +46,26 @@ class Firestore {
           this,
         );
         _documentObservers[call.arguments['handle']].add(snapshot);
+      } else if (call.method == 'QuerySnapshotError') {
+        final List<dynamic> handles =
+            call.arguments['handles'] ?? <dynamic>[call.arguments['handle']];
+        for (int handle in handles) {
+          _queryObservers[handle]?.addError(_listenerException(call.arguments));
+        }
+      } else if (call.method == 'DocumentSnapshotError') {
+        _documentObservers[call.arguments['handle']]
+            ?.addError(_listenerException(call.arguments));
       } else if (call.method == 'DoTransaction') {
-        final int transactionId = call.arguments['transactionId'];
-        return _transactionHandlers[transactionId](
-          new Transaction(transactionId, this),
-        );
+        return _doTransaction(call.arguments['transactionId']);
       }
     });
     _initialized = true;
   }
 
+  /// A `cacheSizeBytes` for [settings] that disables garbage collection of
+  /// the cache.
+  static const int cacheSizeUnlimited = -1;
+
   /// Gets the instance of Firestore for the default Firebase app.
   static final Firestore instance = new Firestore();
 
@@ -76,6 +92,24 @@ class Firestore {
     return new DocumentReference._(this, path.split('/'));
   }
 
+  /// Configures this Firestore instance. Settings that are null keep their
+  /// current value.
+  ///
+  /// When [persistenceEnabled] is true, which is the default, documents are
+  /// cached on disk so that they can be read offline and across restarts.
+  /// [cacheSizeBytes] is the size above which the cache is garbage collected;
+  /// it must be at least 1 MB, or [cacheSizeUnlimited].
+  ///
+  /// Fails if this instance has already been used, so it must be called
+  /// before any other method.
+  Future<void> settings({bool persistenceEnabled, int cacheSizeBytes}) {
+    return channel.invokeMethod('Firestore#settings', <String, dynamic>{
+      'app': app.name,
+      'persistenceEnabled': persistenceEnabled,
+      'cacheSizeBytes': cacheSizeBytes,
+    });
+  }
+
   /// Creates a write batch, used for performing multiple writes as a single
   /// atomic operation.
   ///
@@ -83,6 +117,36 @@ class Firestore {
   /// preferable when you don’t need to condition your writes on read data.
   WriteBatch batch() => new WriteBatch._(this);
 
+  /// Performs any number of writes with a single platform channel call.
+  ///
+  /// The [operations] are committed natively as consecutive batches of at
+  /// most 500 writes, the limit of a single batch, with at most
+  /// [maxConcurrentBatches] commits in flight. Each batch is atomic, but the
+  /// bulk write as a whole is not: the result reports the outcome of every
+  /// batch, ordered by [BulkWriteBatchResult.start]. Only supported on
+  /// Android.
+  Future<List<BulkWriteBatchResult>> bulkWrite(
+    List<BulkWriteOperation> operations, {
+    int maxConcurrentBatches: 4,
+  }) async {
+    assert(maxConcurrentBatches > 0);
+    final List<dynamic> results = await channel.invokeMethod(
+      'Firestore#bulkWrite',
+      <String, dynamic>{
+        'app': app.name,
+        'operations': operations
+            .map((BulkWriteOperation operation) => operation._toMap())
+            .toList(),
+        'maxConcurrentBatches': maxConcurrentBatches,
+      },
+    );
+    return results
+        .map((dynamic result) => new BulkWriteBatchResult._(result))
+        .toList()
+          ..sort((BulkWriteBatchResult a, BulkWriteBatchResult b) =>
+              a.start.compareTo(b.start));
+  }
+
   /// Executes the given TransactionHandler and then attempts to commit the
   /// changes applied within an atomic transaction.
   ///
@@ -111,12 +175,59 @@ class Firestore {
         'Transaction timeout must be more than 0 milliseconds');
     final int transactionId = _transactionHandlerId++;
     _transactionHandlers[transactionId] = transactionHandler;
-    final Map<dynamic, dynamic> result = await channel
-        .invokeMethod('Firestore#runTransaction', <String, dynamic>{
-      'app': app.name,
-      'transactionId': transactionId,
-      'transactionTimeout': timeout.inMilliseconds
-    });
-    return result?.cast<String, dynamic>() ?? <String, dynamic>{};
+    try {
+      final Map<dynamic, dynamic> result = await channel
+          .invokeMethod('Firestore#runTransaction', <String, dynamic>{
+        'app': app.name,
+        'transactionId': transactionId,
+        'transactionTimeout': timeout.inMilliseconds
+      });
+      return result?.cast<String, dynamic>() ?? <String, dynamic>{};
+    } finally {
+      _transactionHandlers.remove(transactionId);
+    }
+  }
+
+  /// Returns the number of live native objects of each kind, such as
+  /// listeners, write batches and transactions, for finding leaks.
+  ///
+  /// Write batches that are not used for ten minutes are dropped natively.
+  /// Only supported on Android.
+  Future<Map<String, int>> debugHandleCounts() async {
+    final Map<dynamic, dynamic> counts =
+        await channel.invokeMethod('Firestore#debugHandleCounts');
+    return counts.cast<String, int>();
+  }
+
+  // The error of a snapshot listener. Its details tell whether the listener
+  // will resubscribe.
+  static PlatformException _listenerException(Map<dynamic, dynamic> data) {
+    return new PlatformException(
+      code: data['code'],
+      message: data['message'],
+      details: <String, dynamic>{'willRetry': data['willRetry'] ?? false},
+    );
+  }
+
+  void _addQuerySnapshot(int handle, Map<dynamic, dynamic> data) {
+    // The stream may have been cancelled while the snapshot was sent.
+    if (!_queryObservers.containsKey(handle)) return;
+    final QuerySnapshot snapshot = data['isDelta'] == true
+        ? new QuerySnapshot._fromChanges(_querySnapshots[handle], data, this)
+        : new QuerySnapshot._(data, this);
+    // Only listeners created with deltaOnly send isDelta.
+    if (data['isDelta'] != null) {
+      _querySnapshots[handle] = snapshot;
+    }
+    _queryObservers[handle].add(snapshot);
+  }
+
+  // Runs one attempt of a transaction, and replies with the result of the
+  // handler and the writes it made.
+  Future<Map<String, dynamic>> _doTransaction(int transactionId) async {
+    final Transaction transaction = new Transaction(transactionId, this);
+    final dynamic result =
+        await _transactionHandlers[transactionId](transaction);
+    return <String, dynamic>{'result': result, 'writes': transaction._writes};
   }
 }
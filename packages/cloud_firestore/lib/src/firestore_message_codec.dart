@@ -12,6 +12,14 @@ class FirestoreMessageCodec extends StandardMessageCodec {
   static const int _kGeoPoint = 129;
   static const int _kDocumentReference = 130;
   static const int _kBlob = 131;
+  static const int _kQuerySnapshot = 132;
+  static const int _kEncodedValue = 133;
+
+  static const List<String> _kDocumentChangeTypes = const <String>[
+    'DocumentChangeType.added',
+    'DocumentChangeType.modified',
+    'DocumentChangeType.removed',
+  ];
 
   @override
   void writeValue(WriteBuffer buffer, dynamic value) {
@@ -60,8 +68,66 @@ class FirestoreMessageCodec extends StandardMessageCodec {
         final int length = readSize(buffer);
         final List<int> bytes = buffer.getUint8List(length);
         return new Blob(bytes);
+      case _kQuerySnapshot:
+        return _readQuerySnapshot(buffer);
+      case _kEncodedValue:
+        // A value encoded ahead of time on a background thread. It is read
+        // as a nested message, since it was aligned relative to its own start.
+        final int length = readSize(buffer);
+        final Uint8List bytes = buffer.getUint8List(length);
+        return readValue(new ReadBuffer(
+            new ByteData.view(bytes.buffer, bytes.offsetInBytes, length)));
       default:
         return super.readValueOfType(type, buffer);
     }
   }
+
+  /// Reads a query snapshot in the compact encoding written by the Android
+  /// plugin, in which every document is written once and changes refer to
+  /// their document by index.
+  ///
+  /// Returns the same map as the regular encoding, sharing the document maps
+  /// between `documents` and `documentChanges`.
+  Map<dynamic, dynamic> _readQuerySnapshot(ReadBuffer buffer) {
+    final Map<dynamic, dynamic> data = readValue(buffer);
+
+    final int parentCount = readSize(buffer);
+    final List<String> parents = new List<String>(parentCount);
+    for (int i = 0; i < parentCount; i++) {
+      parents[i] = utf8.decoder.convert(buffer.getUint8List(readSize(buffer)));
+    }
+
+    final int documentCount = readSize(buffer);
+    final int totalCount = documentCount + readSize(buffer);
+    final List<String> paths = new List<String>(totalCount);
+    final List<dynamic> documents = new List<dynamic>(totalCount);
+    for (int i = 0; i < totalCount; i++) {
+      final String parent = parents[readSize(buffer)];
+      final String id =
+          utf8.decoder.convert(buffer.getUint8List(readSize(buffer)));
+      paths[i] = '$parent/$id';
+      documents[i] = readValue(buffer);
+    }
+
+    final int changeCount = readSize(buffer);
+    final List<dynamic> documentChanges = new List<dynamic>(changeCount);
+    for (int i = 0; i < changeCount; i++) {
+      final String type = _kDocumentChangeTypes[buffer.getUint8()];
+      final int oldIndex = buffer.getInt32();
+      final int newIndex = buffer.getInt32();
+      final int documentIndex = readSize(buffer);
+      documentChanges[i] = <String, dynamic>{
+        'type': type,
+        'oldIndex': oldIndex,
+        'newIndex': newIndex,
+        'document': documents[documentIndex],
+        'path': paths[documentIndex],
+      };
+    }
+
+    data['paths'] = paths.sublist(0, documentCount);
+    data['documents'] = documents.sublist(0, documentCount);
+    data['documentChanges'] = documentChanges;
+    return data;
+  }
 }
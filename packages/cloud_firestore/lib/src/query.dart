@@ -46,8 +46,31 @@ class Query {
   }
 
   /// Notifies of query results at this location
+  ///
+  /// When [deltaOnly] is true, only the first snapshot contains every
+  /// document. Later snapshots only carry the changed documents and are
+  /// rebuilt from the previous snapshot, so a small change to a large result
+  /// set costs as much as the change. Only supported on Android; ignored
+  /// elsewhere.
+  ///
+  /// When [fields] is set, documents only contain those fields. Fields are
+  /// dot-separated paths to nested fields. When [maxBlobSize] is set, larger
+  /// [Blob]s are replaced with null. Both only reduce the work and the data
+  /// sent on Android; they are ignored elsewhere.
+  ///
+  /// Errors of the listener are added to the stream as [PlatformException]s.
+  /// They end the listener, unless [resubscribeOnError] is true and the error
+  /// may be transient, such as an unavailable backend or missing permissions.
+  /// The listener is then subscribed again after an exponential backoff with
+  /// jitter, and the `willRetry` entry of the exception details is true. Only
+  /// supported on Android.
   // TODO(jackson): Reduce code duplication with [DocumentReference]
-  Stream<QuerySnapshot> snapshots() {
+  Stream<QuerySnapshot> snapshots({
+    bool deltaOnly: false,
+    List<String> fields,
+    int maxBlobSize,
+    bool resubscribeOnError: false,
+  }) {
     Future<int> _handle;
     // It's fine to let the StreamController be garbage collected once all the
     // subscribers have cancelled; this analyzer warning is safe to ignore.
@@ -60,6 +83,9 @@ class Query {
             'app': firestore.app.name,
             'path': _path,
             'parameters': _parameters,
+            'deltaOnly': deltaOnly,
+            'projection': _projectionArguments(fields, maxBlobSize),
+            'resubscribeOnError': resubscribeOnError,
           },
         ).then<int>((dynamic result) => result);
         _handle.then((int handle) {
@@ -73,6 +99,7 @@ class Query {
             <String, dynamic>{'handle': handle},
           );
           Firestore._queryObservers.remove(handle);
+          Firestore._querySnapshots.remove(handle);
         });
       },
     );
@@ -80,18 +107,60 @@ class Query {
   }
 
   /// Fetch the documents for this query
-  Future<QuerySnapshot> getDocuments() async {
+  ///
+  /// By default, the documents are read from the server when online. Use
+  /// [source] to read them only from the server, or only from the cache,
+  /// which does not wait for the network.
+  ///
+  /// [fields] and [maxBlobSize] select the data of the documents, as for
+  /// [snapshots].
+  Future<QuerySnapshot> getDocuments({
+    Source source: Source.serverAndCache,
+    List<String> fields,
+    int maxBlobSize,
+  }) async {
     final Map<dynamic, dynamic> data = await Firestore.channel.invokeMethod(
       'Query#getDocuments',
       <String, dynamic>{
         'app': firestore.app.name,
         'path': _path,
         'parameters': _parameters,
+        'source': _getSourceString(source),
+        'projection': _projectionArguments(fields, maxBlobSize),
       },
     );
     return new QuerySnapshot._(data, firestore);
   }
 
+  /// Fetch the first [pageSize] documents for this query.
+  ///
+  /// The following pages are fetched with [QueryPage.next]. The last
+  /// document of each page is kept natively and the next page starts after
+  /// it, so paging needs a single round trip per page and does not depend on
+  /// the values of the ordered fields. Only supported on Android.
+  ///
+  /// A [limit] of this query applies to all the pages together: paging stops
+  /// once that many documents were returned, and the last page may be
+  /// shorter than [pageSize].
+  Future<QueryPage> getDocumentsPage(int pageSize) {
+    assert(pageSize > 0);
+    return _getDocumentsPage(pageSize, null);
+  }
+
+  Future<QueryPage> _getDocumentsPage(int pageSize, int cursor) async {
+    final Map<dynamic, dynamic> data = await Firestore.channel.invokeMethod(
+      'Query#getDocumentsPage',
+      <String, dynamic>{
+        'app': firestore.app.name,
+        'path': _path,
+        'parameters': _parameters,
+        'pageSize': pageSize,
+        'cursor': cursor,
+      },
+    );
+    return new QueryPage._(this, pageSize, data);
+  }
+
   /// Obtains a CollectionReference corresponding to this query's location.
   CollectionReference reference() =>
       new CollectionReference._(firestore, _pathComponents);
@@ -0,0 +1,38 @@
+// Copyright 2018, the Chromium project authors.  Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+
+part of cloud_firestore;
+
+/// A page of the results of a query, obtained with [Query.getDocumentsPage].
+class QueryPage {
+  QueryPage._(this.query, this.pageSize, Map<dynamic, dynamic> data)
+      : snapshot = new QuerySnapshot._(data, query.firestore),
+        _cursor = data['cursor'];
+
+  /// The query this page belongs to.
+  final Query query;
+
+  /// The maximum number of documents in a page.
+  final int pageSize;
+
+  /// The documents of this page.
+  final QuerySnapshot snapshot;
+
+  // The id of the native cursor positioned after the last document of this
+  // page, or null if this is the last page.
+  final int _cursor;
+
+  /// Whether there may be documents after this page.
+  bool get hasMore => _cursor != null;
+
+  /// Fetches the page following this one.
+  ///
+  /// Can only be called once per page, and only if [hasMore] is true. Fails
+  /// if too many other pages were fetched since this one, as only the most
+  /// recent cursors are kept.
+  Future<QueryPage> next() {
+    assert(hasMore);
+    return query._getDocumentsPage(pageSize, _cursor);
+  }
+}
@@ -31,4 +31,33 @@ class QuerySnapshot {
             _firestore,
           );
         });
+
+  QuerySnapshot._withDocuments(
+      this.documents, this.documentChanges, this._firestore);
+
+  /// Creates the snapshot following [previous] by applying the changes of a
+  /// message that only contains the changed documents.
+  factory QuerySnapshot._fromChanges(
+    QuerySnapshot previous,
+    Map<dynamic, dynamic> data,
+    Firestore firestore,
+  ) {
+    final List<DocumentChange> documentChanges =
+        new List<DocumentChange>.generate(data['documentChanges'].length,
+            (int index) {
+      return new DocumentChange._(data['documentChanges'][index], firestore);
+    });
+    final List<DocumentSnapshot> documents =
+        new List<DocumentSnapshot>.from(previous.documents);
+    for (DocumentChange change in documentChanges) {
+      if (change.oldIndex != -1) {
+        documents.removeAt(change.oldIndex);
+      }
+      if (change.newIndex != -1) {
+        documents.insert(change.newIndex, change.document);
+      }
+    }
+    return new QuerySnapshot._withDocuments(
+        documents, documentChanges, firestore);
+  }
 }
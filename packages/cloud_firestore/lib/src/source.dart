@@ -0,0 +1,33 @@
+// Copyright 2018, the Chromium project authors.  Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+
+part of cloud_firestore;
+
+/// An enumeration of the sources a document or query can be read from.
+enum Source {
+  /// Reads from the server when online, and from the cache otherwise.
+  serverAndCache,
+
+  /// Reads from the server only, failing when offline.
+  server,
+
+  /// Reads from the cache only, without waiting for the network.
+  ///
+  /// Fails for a document that is not cached. A query returns the matching
+  /// cached documents, which may be none.
+  cache,
+}
+
+String _getSourceString(Source source) {
+  assert(source != null);
+  switch (source) {
+    case Source.server:
+      return 'server';
+    case Source.cache:
+      return 'cache';
+    case Source.serverAndCache:
+      return 'default';
+  }
+  throw new ArgumentError('Unknown source: $source');
+}
@@ -6,14 +6,25 @@ part of cloud_firestore;
 
 typedef Future<dynamic> TransactionHandler(Transaction transaction);
 
+/// The operations of a transaction run by [Firestore.runTransaction].
+///
+/// Writes are buffered and sent to the platform together with the result of
+/// the [TransactionHandler], so that a transaction needs a single round trip
+/// for all of its writes. As with the native transactions, all the reads must
+/// happen before the first write.
 class Transaction {
   int _transactionId;
   Firestore _firestore;
+  final List<Map<String, dynamic>> _writes = <Map<String, dynamic>>[];
 
   @visibleForTesting
   Transaction(this._transactionId, this._firestore);
 
   Future<DocumentSnapshot> get(DocumentReference documentReference) async {
+    if (_writes.isNotEmpty) {
+      throw new StateError(
+          'Transactions require all reads to be executed before all writes.');
+    }
     final dynamic result = await Firestore.channel
         .invokeMethod('Transaction#get', <String, dynamic>{
       'app': _firestore.app.name,
@@ -29,20 +40,16 @@ class Transaction {
   }
 
   Future<void> delete(DocumentReference documentReference) async {
-    return Firestore.channel
-        .invokeMethod('Transaction#delete', <String, dynamic>{
-      'app': _firestore.app.name,
-      'transactionId': _transactionId,
+    _writes.add(<String, dynamic>{
+      'type': 'delete',
       'path': documentReference.path,
     });
   }
 
   Future<void> update(
       DocumentReference documentReference, Map<String, dynamic> data) async {
-    return Firestore.channel
-        .invokeMethod('Transaction#update', <String, dynamic>{
-      'app': _firestore.app.name,
-      'transactionId': _transactionId,
+    _writes.add(<String, dynamic>{
+      'type': 'update',
       'path': documentReference.path,
       'data': data,
     });
@@ -50,9 +57,8 @@ class Transaction {
 
   Future<void> set(
       DocumentReference documentReference, Map<String, dynamic> data) async {
-    return Firestore.channel.invokeMethod('Transaction#set', <String, dynamic>{
-      'app': _firestore.app.name,
-      'transactionId': _transactionId,
+    _writes.add(<String, dynamic>{
+      'type': 'set',
       'path': documentReference.path,
       'data': data,
     });
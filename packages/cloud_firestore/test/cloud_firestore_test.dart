@@ -3,10 +3,12 @@
 // found in the LICENSE file.
 
 import 'dart:async';
+import 'dart:convert';
 import 'dart:typed_data';
 
 import 'package:cloud_firestore/cloud_firestore.dart';
 import 'package:firebase_core/firebase_core.dart';
+import 'package:flutter/foundation.dart' show WriteBuffer;
 import 'package:flutter/services.dart';
 import 'package:flutter_test/flutter_test.dart';
 
@@ -51,6 +53,8 @@ void main() {
                   new MethodCall('QuerySnapshot', <String, dynamic>{
                     'app': app.name,
                     'handle': handle,
+                    'isDelta':
+                        methodCall.arguments['deltaOnly'] ? false : null,
                     'paths': <String>["${methodCall.arguments['path']}/0"],
                     'documents': <dynamic>[kMockDocumentSnapshotData],
                     'documentChanges': <dynamic>[
@@ -98,6 +102,16 @@ void main() {
                 },
               ],
             };
+          case 'Query#getDocumentsPage':
+            final bool firstPage = methodCall.arguments['cursor'] == null;
+            return <String, dynamic>{
+              'cursor': firstPage ? 3 : null,
+              'paths': <String>[
+                "${methodCall.arguments['path']}/${firstPage ? 0 : 1}"
+              ],
+              'documents': <dynamic>[kMockDocumentSnapshotData],
+              'documentChanges': <dynamic>[],
+            };
           case 'DocumentReference#setData':
             return true;
           case 'DocumentReference#get':
@@ -122,14 +136,15 @@ void main() {
               return <String, dynamic>{'path': 'foo/notExists', 'data': null};
             }
             throw new PlatformException(code: 'UNKNOWN_PATH');
-          case 'Transaction#set':
-            return null;
-          case 'Transaction#update':
-            return null;
-          case 'Transaction#delete':
-            return null;
           case 'WriteBatch#create':
             return 1;
+          case 'Firestore#debugHandleCounts':
+            return <String, int>{'queryListeners': 0, 'batches': 1};
+          case 'Firestore#bulkWrite':
+            return <dynamic>[
+              <String, dynamic>{'start': 500, 'count': 1, 'error': 'failed'},
+              <String, dynamic>{'start': 0, 'count': 500, 'error': null},
+            ];
           default:
             return null;
         }
@@ -185,59 +200,67 @@ void main() {
         ]);
       });
 
-      test('delete', () async {
-        final DocumentReference documentReference =
-            firestore.document('foo/bar');
-        await transaction.delete(documentReference);
-        expect(log, <Matcher>[
-          isMethodCall('Transaction#delete', arguments: <String, dynamic>{
-            'app': app.name,
-            'transactionId': 0,
-            'path': documentReference.path
-          })
-        ]);
-      });
-
-      test('update', () async {
+      test('writes are buffered', () async {
         final DocumentReference documentReference =
             firestore.document('foo/bar');
-        final DocumentSnapshot documentSnapshot = await documentReference.get();
+        final DocumentSnapshot documentSnapshot =
+            await transaction.get(documentReference);
         final Map<String, dynamic> data = documentSnapshot.data;
         data['key2'] = 'val2';
         await transaction.set(documentReference, data);
+        await transaction.update(
+          firestore.document('foo/baz'),
+          <String, dynamic>{'key1': 'val2'},
+        );
+        await transaction.delete(firestore.document('foo/qux'));
         expect(log, <Matcher>[
-          isMethodCall('DocumentReference#get', arguments: <String, dynamic>{
-            'app': app.name,
-            'path': 'foo/bar',
-          }),
-          isMethodCall('Transaction#set', arguments: <String, dynamic>{
+          isMethodCall('Transaction#get', arguments: <String, dynamic>{
             'app': app.name,
             'transactionId': 0,
-            'path': documentReference.path,
-            'data': <String, dynamic>{'key1': 'val1', 'key2': 'val2'}
-          })
+            'path': documentReference.path
+          }),
         ]);
       });
 
-      test('set', () async {
-        final DocumentReference documentReference =
-            firestore.document('foo/bar');
-        final DocumentSnapshot documentSnapshot = await documentReference.get();
-        final Map<String, dynamic> data = documentSnapshot.data;
-        data['key2'] = 'val2';
-        await transaction.set(documentReference, data);
-        expect(log, <Matcher>[
-          isMethodCall('DocumentReference#get', arguments: <String, dynamic>{
-            'app': app.name,
-            'path': 'foo/bar',
-          }),
-          isMethodCall('Transaction#set', arguments: <String, dynamic>{
-            'app': app.name,
-            'transactionId': 0,
-            'path': documentReference.path,
-            'data': <String, dynamic>{'key1': 'val1', 'key2': 'val2'}
-          })
-        ]);
+      test('get after write', () async {
+        await transaction.delete(firestore.document('foo/bar'));
+        expect(transaction.get(firestore.document('foo/bar')),
+            throwsA(const isInstanceOf<StateError>()));
+      });
+
+      test('DoTransaction', () async {
+        firestore.runTransaction((Transaction tx) async {
+          await tx.set(firestore.document('foo/bar'), <String, dynamic>{
+            'key1': 'val1',
+          });
+          await tx.delete(firestore.document('foo/baz'));
+          return <String, dynamic>{'key': 'value'};
+        });
+        await new Future<Null>.delayed(Duration.zero);
+        final Completer<ByteData> reply = new Completer<ByteData>();
+        await BinaryMessages.handlePlatformMessage(
+          Firestore.channel.name,
+          Firestore.channel.codec.encodeMethodCall(
+            new MethodCall('DoTransaction', <String, dynamic>{
+              'transactionId': log.last.arguments['transactionId'],
+            }),
+          ),
+          reply.complete,
+        );
+        expect(
+          Firestore.channel.codec.decodeEnvelope(await reply.future),
+          <String, dynamic>{
+            'result': <String, dynamic>{'key': 'value'},
+            'writes': <dynamic>[
+              <String, dynamic>{
+                'type': 'set',
+                'path': 'foo/bar',
+                'data': <String, dynamic>{'key1': 'val1'},
+              },
+              <String, dynamic>{'type': 'delete', 'path': 'foo/baz'},
+            ],
+          },
+        );
       });
     });
 
@@ -288,7 +311,10 @@ void main() {
               'parameters': <String, dynamic>{
                 'where': <List<dynamic>>[],
                 'orderBy': <List<dynamic>>[],
-              }
+              },
+              'deltaOnly': false,
+              'projection': null,
+              'resubscribeOnError': false,
             },
           ),
           isMethodCall(
@@ -297,6 +323,156 @@ void main() {
           ),
         ]);
       });
+      test('listen shared snapshot', () async {
+        final List<QuerySnapshot> first = <QuerySnapshot>[];
+        final List<QuerySnapshot> second = <QuerySnapshot>[];
+        final StreamSubscription<QuerySnapshot> firstSubscription =
+            collectionReference.snapshots().listen(first.add);
+        final StreamSubscription<QuerySnapshot> secondSubscription =
+            collectionReference.snapshots().listen(second.add);
+        // Wait for the first snapshots.
+        await new Future<Null>.delayed(Duration.zero);
+        await new Future<Null>.delayed(Duration.zero);
+        await BinaryMessages.handlePlatformMessage(
+          Firestore.channel.name,
+          Firestore.channel.codec.encodeMethodCall(
+            new MethodCall('QuerySnapshot', <String, dynamic>{
+              'handles': <int>[0, 1],
+              'paths': <String>['foo/0', 'foo/1'],
+              'documents': <dynamic>[
+                kMockDocumentSnapshotData,
+                <String, dynamic>{'2': 4},
+              ],
+              'documentChanges': <dynamic>[],
+            }),
+          ),
+          (_) {},
+        );
+        expect(first, hasLength(2));
+        expect(second, hasLength(2));
+        expect(first[1].documents, hasLength(2));
+        expect(second[1].documents[1].data, <String, dynamic>{'2': 4});
+        await firstSubscription.cancel();
+        await secondSubscription.cancel();
+      });
+      test('listen error', () async {
+        final List<dynamic> errors = <dynamic>[];
+        final StreamSubscription<QuerySnapshot> subscription =
+            collectionReference
+                .snapshots(resubscribeOnError: true)
+                .listen((_) {}, onError: errors.add);
+        await new Future<Null>.delayed(Duration.zero);
+        await new Future<Null>.delayed(Duration.zero);
+        expect(log.first.arguments['resubscribeOnError'], isTrue);
+        await BinaryMessages.handlePlatformMessage(
+          Firestore.channel.name,
+          Firestore.channel.codec.encodeMethodCall(
+            new MethodCall('QuerySnapshotError', <String, dynamic>{
+              'handles': <int>[0],
+              'code': 'UNAVAILABLE',
+              'message': 'The service is currently unavailable.',
+              'willRetry': true,
+            }),
+          ),
+          (_) {},
+        );
+        expect(errors, hasLength(1));
+        final PlatformException error = errors.single;
+        expect(error.code, 'UNAVAILABLE');
+        expect(error.details, <String, dynamic>{'willRetry': true});
+        await subscription.cancel();
+      });
+      test('listen after a terminal error', () async {
+        final List<dynamic> errors = <dynamic>[];
+        final StreamSubscription<QuerySnapshot> firstSubscription =
+            collectionReference.snapshots().listen((_) {}, onError: errors.add);
+        await new Future<Null>.delayed(Duration.zero);
+        await new Future<Null>.delayed(Duration.zero);
+        await BinaryMessages.handlePlatformMessage(
+          Firestore.channel.name,
+          Firestore.channel.codec.encodeMethodCall(
+            new MethodCall('QuerySnapshotError', <String, dynamic>{
+              'handles': <int>[0],
+              'code': 'INVALID_ARGUMENT',
+              'message': 'The query requires an index.',
+              'willRetry': false,
+            }),
+          ),
+          (_) {},
+        );
+        expect(errors, hasLength(1));
+        expect(
+            (errors.single as PlatformException).details['willRetry'], isFalse);
+
+        // The ended listener is not shared, so the second listener of the same
+        // query gets a native listener of its own.
+        final List<QuerySnapshot> snapshots = <QuerySnapshot>[];
+        final StreamSubscription<QuerySnapshot> secondSubscription =
+            collectionReference.snapshots().listen(snapshots.add);
+        await new Future<Null>.delayed(Duration.zero);
+        await new Future<Null>.delayed(Duration.zero);
+        expect(
+          log.where((MethodCall call) =>
+              call.method == 'Query#addSnapshotListener'),
+          hasLength(2),
+        );
+        expect(snapshots, hasLength(1));
+        expect(snapshots.single.documents.single.data,
+            kMockDocumentSnapshotData);
+        expect(errors, hasLength(1));
+        await firstSubscription.cancel();
+        await secondSubscription.cancel();
+      });
+      test('listen deltaOnly', () async {
+        final List<QuerySnapshot> snapshots = <QuerySnapshot>[];
+        final StreamSubscription<QuerySnapshot> subscription =
+            collectionReference
+                .snapshots(deltaOnly: true)
+                .listen(snapshots.add);
+        // Wait for the first snapshot.
+        await new Future<Null>.delayed(Duration.zero);
+        await new Future<Null>.delayed(Duration.zero);
+        await BinaryMessages.handlePlatformMessage(
+          Firestore.channel.name,
+          Firestore.channel.codec.encodeMethodCall(
+            new MethodCall('QuerySnapshot', <String, dynamic>{
+              'handle': 0,
+              'isDelta': true,
+              'paths': <String>[],
+              'documents': <dynamic>[],
+              'documentChanges': <dynamic>[
+                <String, dynamic>{
+                  'oldIndex': 0,
+                  'newIndex': 0,
+                  'type': 'DocumentChangeType.modified',
+                  'document': <String, dynamic>{'1': 3},
+                  'path': 'foo/0',
+                },
+                <String, dynamic>{
+                  'oldIndex': -1,
+                  'newIndex': 0,
+                  'type': 'DocumentChangeType.added',
+                  'document': <String, dynamic>{'2': 4},
+                  'path': 'foo/1',
+                },
+              ],
+            }),
+          ),
+          (_) {},
+        );
+        await new Future<Null>.delayed(Duration.zero);
+        subscription.cancel();
+
+        expect(snapshots, hasLength(2));
+        expect(snapshots[0].documents.single.data, kMockDocumentSnapshotData);
+        final List<DocumentSnapshot> documents = snapshots[1].documents;
+        expect(documents, hasLength(2));
+        expect(documents[0].reference.path, 'foo/1');
+        expect(documents[1].reference.path, 'foo/0');
+        expect(documents[1].data, <String, dynamic>{'1': 3});
+        expect(snapshots[1].documentChanges, hasLength(2));
+        expect(log.first.arguments['deltaOnly'], isTrue);
+      });
       test('where', () async {
         final StreamSubscription<QuerySnapshot> subscription =
             collectionReference
@@ -318,7 +494,10 @@ void main() {
                     <dynamic>['createdAt', '<', 100],
                   ],
                   'orderBy': <List<dynamic>>[],
-                }
+                },
+                'deltaOnly': false,
+                'projection': null,
+                'resubscribeOnError': false,
               },
             ),
             isMethodCall(
@@ -349,7 +528,10 @@ void main() {
                     <dynamic>['profile', '==', null],
                   ],
                   'orderBy': <List<dynamic>>[],
-                }
+                },
+                'deltaOnly': false,
+                'projection': null,
+                'resubscribeOnError': false,
               },
             ),
             isMethodCall(
@@ -380,7 +562,10 @@ void main() {
                   'orderBy': <List<dynamic>>[
                     <dynamic>['createdAt', false]
                   ],
-                }
+                },
+                'deltaOnly': false,
+                'projection': null,
+                'resubscribeOnError': false,
               },
             ),
             isMethodCall(
@@ -409,6 +594,8 @@ void main() {
               arguments: <String, dynamic>{
                 'app': app.name,
                 'path': 'path/to/foo',
+                'projection': null,
+                'resubscribeOnError': false,
               },
             ),
             isMethodCall(
@@ -500,6 +687,7 @@ void main() {
               arguments: <String, dynamic>{
                 'app': app.name,
                 'path': 'foo/bar',
+                'source': 'default',
               },
             ),
           ]),
@@ -520,6 +708,22 @@ void main() {
           expect(e.code, equals('UNKNOWN_PATH'));
         }
       });
+      test('get from cache', () async {
+        await collectionReference.document('bar').get(source: Source.cache);
+        expect(
+          log,
+          equals(<Matcher>[
+            isMethodCall(
+              'DocumentReference#get',
+              arguments: <String, dynamic>{
+                'app': app.name,
+                'path': 'foo/bar',
+                'source': 'cache',
+              },
+            ),
+          ]),
+        );
+      });
       test('collection', () async {
         final CollectionReference colRef =
             collectionReference.document('bar').collection('baz');
@@ -544,6 +748,8 @@ void main() {
                     'where': <List<dynamic>>[],
                     'orderBy': <List<dynamic>>[],
                   },
+                  'source': 'default',
+                  'projection': null,
                 },
               ),
             ],
@@ -553,6 +759,97 @@ void main() {
         expect(document.reference.path, equals('foo/0'));
         expect(document.data, equals(kMockDocumentSnapshotData));
       });
+      test('getDocuments from server', () async {
+        await collectionReference.getDocuments(source: Source.server);
+        expect(
+          log,
+          equals(
+            <Matcher>[
+              isMethodCall(
+                'Query#getDocuments',
+                arguments: <String, dynamic>{
+                  'app': app.name,
+                  'path': 'foo',
+                  'parameters': <String, dynamic>{
+                    'where': <List<dynamic>>[],
+                    'orderBy': <List<dynamic>>[],
+                  },
+                  'source': 'server',
+                  'projection': null,
+                },
+              ),
+            ],
+          ),
+        );
+      });
+      test('getDocuments with projection', () async {
+        await collectionReference.getDocuments(
+          fields: <String>['title', 'author.name'],
+          maxBlobSize: 1024,
+        );
+        expect(
+          log,
+          equals(
+            <Matcher>[
+              isMethodCall(
+                'Query#getDocuments',
+                arguments: <String, dynamic>{
+                  'app': app.name,
+                  'path': 'foo',
+                  'parameters': <String, dynamic>{
+                    'where': <List<dynamic>>[],
+                    'orderBy': <List<dynamic>>[],
+                  },
+                  'source': 'default',
+                  'projection': <String, dynamic>{
+                    'fields': <String>['title', 'author.name'],
+                    'maxBlobSize': 1024,
+                  },
+                },
+              ),
+            ],
+          ),
+        );
+      });
+      test('getDocumentsPage', () async {
+        final QueryPage page = await collectionReference.getDocumentsPage(1);
+        expect(page.hasMore, isTrue);
+        expect(page.snapshot.documents.single.reference.path, 'foo/0');
+        final QueryPage nextPage = await page.next();
+        expect(nextPage.hasMore, isFalse);
+        expect(nextPage.snapshot.documents.single.reference.path, 'foo/1');
+        expect(
+          log,
+          equals(<Matcher>[
+            isMethodCall(
+              'Query#getDocumentsPage',
+              arguments: <String, dynamic>{
+                'app': app.name,
+                'path': 'foo',
+                'parameters': <String, dynamic>{
+                  'where': <List<dynamic>>[],
+                  'orderBy': <List<dynamic>>[],
+                },
+                'pageSize': 1,
+                'cursor': null,
+              },
+            ),
+            isMethodCall(
+              'Query#getDocumentsPage',
+              arguments: <String, dynamic>{
+                'app': app.name,
+                'path': 'foo',
+                'parameters': <String, dynamic>{
+                  'where': <List<dynamic>>[],
+                  'orderBy': <List<dynamic>>[],
+                },
+                'pageSize': 1,
+                'cursor': 3,
+              },
+            ),
+          ]),
+        );
+      });
     });
 
     group('FirestoreMessageCodec', () {
@@ -578,6 +875,158 @@ void main() {
         final Blob message = new Blob(bytes);
         _checkEncodeDecode<dynamic>(codec, message);
       });
+      test('decode encoded value', () {
+        const FirestoreMessageCodec firestoreCodec =
+            const FirestoreMessageCodec();
+        final ByteData value = codec.encodeMessage(<dynamic>[
+          testTime,
+          const GeoPoint(37.421939, -122.083509),
+        ]);
+        final WriteBuffer buffer = new WriteBuffer();
+        buffer.putUint8(133);
+        firestoreCodec.writeSize(buffer, value.lengthInBytes);
+        buffer.putUint8List(
+            value.buffer.asUint8List(value.offsetInBytes, value.lengthInBytes));
+        expect(
+          codec.decodeMessage(buffer.done()),
+          <dynamic>[testTime, const GeoPoint(37.421939, -122.083509)],
+        );
+      });
+      test('decode compact query snapshot', () {
+        const FirestoreMessageCodec firestoreCodec =
+            const FirestoreMessageCodec();
+        final WriteBuffer buffer = new WriteBuffer();
+        buffer.putUint8(132);
+        firestoreCodec.writeValue(buffer, <String, dynamic>{'handle': 7});
+        void writeString(String value) {
+          final List<int> bytes = utf8.encode(value);
+          firestoreCodec.writeSize(buffer, bytes.length);
+          buffer.putUint8List(bytes);
+        }
+
+        // Parent paths.
+        firestoreCodec.writeSize(buffer, 1);
+        writeString('foo');
+        // One document in the snapshot and one removed document.
+        firestoreCodec.writeSize(buffer, 1);
+        firestoreCodec.writeSize(buffer, 1);
+        firestoreCodec.writeSize(buffer, 0);
+        writeString('bar');
+        firestoreCodec.writeValue(buffer, <String, dynamic>{'a': 1});
+        firestoreCodec.writeSize(buffer, 0);
+        writeString('baz');
+        firestoreCodec.writeValue(buffer, <String, dynamic>{'b': 2});
+        // Changes.
+        firestoreCodec.writeSize(buffer, 2);
+        buffer.putUint8(0);
+        buffer.putInt32(-1);
+        buffer.putInt32(0);
+        firestoreCodec.writeSize(buffer, 0);
+        buffer.putUint8(2);
+        buffer.putInt32(1);
+        buffer.putInt32(-1);
+        firestoreCodec.writeSize(buffer, 1);
+
+        final Map<dynamic, dynamic> data = codec.decodeMessage(buffer.done());
+        expect(data['handle'], 7);
+        expect(data['paths'], <String>['foo/bar']);
+        expect(data['documents'], <dynamic>[
+          <String, dynamic>{'a': 1}
+        ]);
+        final List<dynamic> changes = data['documentChanges'];
+        expect(changes, hasLength(2));
+        expect(changes[0]['type'], 'DocumentChangeType.added');
+        expect(changes[0]['path'], 'foo/bar');
+        expect(changes[0]['document'], same(data['documents'][0]));
+        expect(changes[1]['type'], 'DocumentChangeType.removed');
+        expect(changes[1]['oldIndex'], 1);
+        expect(changes[1]['path'], 'foo/baz');
+        expect(changes[1]['document'], <String, dynamic>{'b': 2});
+      });
+    });
+
+    test('settings', () async {
+      await firestore.settings(
+        persistenceEnabled: true,
+        cacheSizeBytes: Firestore.cacheSizeUnlimited,
+      );
+      expect(
+        log,
+        equals(<Matcher>[
+          isMethodCall(
+            'Firestore#settings',
+            arguments: <String, dynamic>{
+              'app': app.name,
+              'persistenceEnabled': true,
+              'cacheSizeBytes': -1,
+            },
+          ),
+        ]),
+      );
+    });
+
+    test('debugHandleCounts', () async {
+      final Map<String, int> counts = await firestore.debugHandleCounts();
+      expect(log, <Matcher>[
+        isMethodCall('Firestore#debugHandleCounts', arguments: null),
+      ]);
+      expect(counts, <String, int>{'queryListeners': 0, 'batches': 1});
+    });
+
+    group('bulkWrite', () {
+      test('operations', () async {
+        final List<BulkWriteBatchResult> results = await firestore.bulkWrite(
+          <BulkWriteOperation>[
+            new BulkWriteOperation.setData(
+              collectionReference.document('bar'),
+              <String, String>{'bazKey': 'quxValue'},
+              merge: true,
+            ),
+            new BulkWriteOperation.updateData(
+              collectionReference.document('baz'),
+              <String, String>{'bazKey': 'quxValue'},
+            ),
+            new BulkWriteOperation.delete(collectionReference.document('qux')),
+          ],
+        );
+        expect(
+          log,
+          <Matcher>[
+            isMethodCall(
+              'Firestore#bulkWrite',
+              arguments: <String, dynamic>{
+                'app': app.name,
+                'operations': <dynamic>[
+                  <String, dynamic>{
+                    'type': 'set',
+                    'path': 'foo/bar',
+                    'data': <String, String>{'bazKey': 'quxValue'},
+                    'merge': true,
+                  },
+                  <String, dynamic>{
+                    'type': 'update',
+                    'path': 'foo/baz',
+                    'data': <String, String>{'bazKey': 'quxValue'},
+                    'merge': false,
+                  },
+                  <String, dynamic>{
+                    'type': 'delete',
+                    'path': 'foo/qux',
+                    'data': null,
+                    'merge': false,
+                  },
+                ],
+                'maxConcurrentBatches': 4,
+              },
+            ),
+          ],
+        );
+        expect(results, hasLength(2));
+        expect(results[0].start, 0);
+        expect(results[0].isSuccessful, isTrue);
+        expect(results[1].start, 500);
+        expect(results[1].error, 'failed');
+      });
     });
 
     group('WriteBatch', () {
@@ -4,6 +4,8 @@
 
 package io.flutter.plugins.firebase.database;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.util.SparseArray;
 import com.google.android.gms.tasks.Task;
@@ -20,14 +22,22 @@ import com.google.firebase.database.MutableData;
 import com.google.firebase.database.Query;
 import com.google.firebase.database.Transaction;
 import com.google.firebase.database.ValueEventListener;
+import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
 import io.flutter.plugin.common.MethodChannel.Result;
+import io.flutter.plugin.common.MethodCodec;
 import io.flutter.plugin.common.PluginRegistry;
+import io.flutter.plugin.common.StandardMethodCodec;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -35,8 +45,19 @@ import java.util.concurrent.TimeoutException;
 public class FirebaseDatabasePlugin implements MethodCallHandler {
 
   private static final String TAG = "FirebaseDatabasePlugin";
+  private static final String CHANNEL_NAME = "plugins.flutter.io/firebase_database";
+  private static final MethodCodec METHOD_CODEC = StandardMethodCodec.INSTANCE;
+  // How long the child events of an observer are collected before they are sent in a single
+  // message, about one frame.
+  private static final long EVENT_BATCH_WINDOW_MS = 16;
 
   private final MethodChannel channel;
+  private final BinaryMessenger messenger;
+  // Snapshots are converted and encoded on this thread, in the order they are received, and only
+  // the encoded messages are posted to the platform thread.
+  private final ScheduledExecutorService serializationExecutor =
+      Executors.newSingleThreadScheduledExecutor();
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
   private static final String EVENT_TYPE_CHILD_ADDED = "_EventType.childAdded";
   private static final String EVENT_TYPE_CHILD_REMOVED = "_EventType.childRemoved";
   private static final String EVENT_TYPE_CHILD_CHANGED = "_EventType.childChanged";
@@ -48,13 +69,28 @@ public class FirebaseDatabasePlugin implements MethodCallHandler {
   private final SparseArray<EventObserver> observers = new SparseArray<>();
 
   public static void registerWith(PluginRegistry.Registrar registrar) {
-    final MethodChannel channel =
-        new MethodChannel(registrar.messenger(), "plugins.flutter.io/firebase_database");
-    channel.setMethodCallHandler(new FirebaseDatabasePlugin(channel));
+    final MethodChannel channel = new MethodChannel(registrar.messenger(), CHANNEL_NAME);
+    channel.setMethodCallHandler(new FirebaseDatabasePlugin(channel, registrar.messenger()));
   }
 
-  private FirebaseDatabasePlugin(MethodChannel channel) {
+  private FirebaseDatabasePlugin(MethodChannel channel, BinaryMessenger messenger) {
     this.channel = channel;
+    this.messenger = messenger;
+  }
+
+  /**
+   * Encodes a method call on the calling thread, and sends it on the platform thread. Calls sent
+   * this way are delivered in order.
+   */
+  private void invokeMethodFromBackground(String method, Object arguments) {
+    final ByteBuffer message = METHOD_CODEC.encodeMethodCall(new MethodCall(method, arguments));
+    mainHandler.post(
+        new Runnable() {
+          @Override
+          public void run() {
+            messenger.send(CHANNEL_NAME, message);
+          }
+        });
   }
 
   private DatabaseReference getReference(FirebaseDatabase database, Map<String, Object> arguments) {
@@ -168,34 +204,95 @@ public class FirebaseDatabasePlugin implements MethodCallHandler {
     }
   }
 
+  /**
+   * Sends the events of a query to Dart.
+   *
+   * <p>Snapshots are converted on the serialization thread. Child events are collected for {@link
+   * #EVENT_BATCH_WINDOW_MS} and sent in a single "Events" message, so that the many events of a
+   * query that starts listening do not each cost a platform message.
+   */
   private class EventObserver implements ChildEventListener, ValueEventListener {
-    private String requestedEventType;
-    private int handle;
+    private final String requestedEventType;
+    private final int handle;
+    // Set on the platform thread when the observer is removed, after which events are dropped.
+    private volatile boolean removed;
+    // Only accessed on the serialization thread.
+    private final List<Map<String, Object>> pendingEvents = new ArrayList<>();
+    private final Runnable flushEvents =
+        new Runnable() {
+          @Override
+          public void run() {
+            flushEvents();
+          }
+        };
 
     EventObserver(String requestedEventType, int handle) {
       this.requestedEventType = requestedEventType;
       this.handle = handle;
     }
 
-    private void sendEvent(String eventType, DataSnapshot snapshot, String previousChildName) {
-      if (eventType.equals(requestedEventType)) {
-        Map<String, Object> arguments = new HashMap<>();
-        Map<String, Object> snapshotMap = new HashMap<>();
-        snapshotMap.put("key", snapshot.getKey());
-        snapshotMap.put("value", snapshot.getValue());
-        arguments.put("handle", handle);
-        arguments.put("snapshot", snapshotMap);
-        arguments.put("previousSiblingKey", previousChildName);
-        channel.invokeMethod("Event", arguments);
+    private void sendEvent(
+        String eventType, final DataSnapshot snapshot, final String previousChildName) {
+      if (!eventType.equals(requestedEventType)) {
+        return;
       }
+      serializationExecutor.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              if (removed) {
+                return;
+              }
+              Map<String, Object> event = new HashMap<>();
+              Map<String, Object> snapshotMap = new HashMap<>();
+              snapshotMap.put("key", snapshot.getKey());
+              snapshotMap.put("value", snapshot.getValue());
+              event.put("snapshot", snapshotMap);
+              event.put("previousSiblingKey", previousChildName);
+              if (requestedEventType.equals(EVENT_TYPE_VALUE)) {
+                event.put("handle", handle);
+                invokeMethodFromBackground("Event", event);
+                return;
+              }
+              if (pendingEvents.isEmpty()) {
+                serializationExecutor.schedule(
+                    flushEvents, EVENT_BATCH_WINDOW_MS, TimeUnit.MILLISECONDS);
+              }
+              pendingEvents.add(event);
+            }
+          });
+    }
+
+    /** Sends the pending child events. Only called on the serialization thread. */
+    private void flushEvents() {
+      if (pendingEvents.isEmpty()) {
+        return;
+      }
+      List<Map<String, Object>> events = new ArrayList<>(pendingEvents);
+      pendingEvents.clear();
+      if (removed) {
+        return;
+      }
+      Map<String, Object> arguments = new HashMap<>();
+      arguments.put("handle", handle);
+      arguments.put("events", events);
+      invokeMethodFromBackground("Events", arguments);
     }
 
     @Override
     public void onCancelled(DatabaseError error) {
-      Map<String, Object> arguments = new HashMap<>();
+      final Map<String, Object> arguments = new HashMap<>();
       arguments.put("handle", handle);
       arguments.put("error", asMap(error));
-      channel.invokeMethod("Error", arguments);
+      // The events received before the error are sent first.
+      serializationExecutor.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              flushEvents();
+              invokeMethodFromBackground("Error", arguments);
+            }
+          });
     }
 
     @Override
@@ -489,6 +586,7 @@ public class FirebaseDatabasePlugin implements MethodCallHandler {
             } else {
               query.removeEventListener((ChildEventListener) observer);
             }
+            observer.removed = true;
             observers.delete(handle);
             result.success(null);
             break;
@@ -27,14 +27,24 @@ class FirebaseDatabase {
     if (_initialized) return;
     _channel.setMethodCallHandler((MethodCall call) async {
       switch (call.method) {
+        // The observer may have been removed while the event was sent.
         case 'Event':
           final Event event = new Event._(call.arguments);
-          _observers[call.arguments['handle']].add(event);
+          _observers[call.arguments['handle']]?.add(event);
+          return null;
+        case 'Events':
+          // The child events received by an observer during a frame.
+          final StreamController<Event> controller =
+              _observers[call.arguments['handle']];
+          if (controller == null) return null;
+          for (Map<dynamic, dynamic> event in call.arguments['events']) {
+            controller.add(new Event._(event));
+          }
           return null;
         case 'Error':
           final DatabaseError error =
               new DatabaseError._(call.arguments['error']);
-          _observers[call.arguments['handle']].addError(error);
+          _observers[call.arguments['handle']]?.addError(error);
           return null;
         case 'DoTransaction':
           final MutableData mutableData =
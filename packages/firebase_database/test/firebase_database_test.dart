@@ -557,6 +557,45 @@ void main() {
           ],
         );
       });
+      test('observing batched child events', () async {
+        mockHandleId = 88;
+        final Query query = database.reference().child('foo');
+        final AsyncQueue<Event> events = new AsyncQueue<Event>();
+
+        // Subscribe and allow subscription to complete.
+        final StreamSubscription<Event> subscription =
+            query.onChildAdded.listen(events.add);
+        await new Future<Null>.delayed(const Duration(seconds: 0));
+
+        await BinaryMessages.handlePlatformMessage(
+          channel.name,
+          channel.codec.encodeMethodCall(
+            new MethodCall('Events', <String, dynamic>{
+              'handle': 88,
+              'events': <Map<String, dynamic>>[
+                <String, dynamic>{
+                  'snapshot': <String, dynamic>{'key': 'a', 'value': 1},
+                  'previousSiblingKey': null,
+                },
+                <String, dynamic>{
+                  'snapshot': <String, dynamic>{'key': 'b', 'value': 2},
+                  'previousSiblingKey': 'a',
+                },
+              ],
+            }),
+          ),
+          (_) {},
+        );
+        final Event event1 = await events.remove();
+        final Event event2 = await events.remove();
+        expect(event1.snapshot.key, 'a');
+        expect(event1.snapshot.value, 1);
+        expect(event1.previousSiblingKey, isNull);
+        expect(event2.snapshot.key, 'b');
+        expect(event2.snapshot.value, 2);
+        expect(event2.previousSiblingKey, 'a');
+        subscription.cancel();
+      });
     });
   });
 }